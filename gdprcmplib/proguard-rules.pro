@@ -24,6 +24,10 @@
 -keep class org.gdprcmplib.CmpActivity { *; }
 -keep class org.gdprcmplib.CmpDetailsActivity { *; }
 -keep class org.gdprcmplib.CmpActivityResult { *; }
+-keep class org.gdprcmplib.ConsentSnapshot { public *; }
+-keep interface org.gdprcmplib.HttpTransport { *; }
+-keep interface org.gdprcmplib.HttpTransport$Response { *; }
+-keep class org.gdprcmplib.UrlConnectionHttpTransport { public *; }
 
 -keepattributes Exceptions, MethodParameters
 -keepparameternames
\ No newline at end of file
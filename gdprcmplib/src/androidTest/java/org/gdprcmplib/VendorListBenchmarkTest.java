@@ -0,0 +1,125 @@
+package org.gdprcmplib;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares parsing a vendor list through an org.json tree, as
+ * {@link HttpMessage#getJSONObject()} and {@link GdprData#GdprData(JSONObject, JSONObject)} do,
+ * with streaming it through {@link VendorList}.  Timings and the peak live heap of either path
+ * are logged under the tag of this class; they are not assertions.
+ */
+@RunWith(AndroidJUnit4.class)
+public class VendorListBenchmarkTest {
+
+    private static final String TAG = "VendorListBenchmark";
+    private static final int VENDORS = 700;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 50;
+
+    // about the size and shape of the published vendor list
+    private static byte[] newVendorList() throws Exception {
+        StringBuilder json = new StringBuilder(256 * VENDORS);
+        json.append("{\"vendorListVersion\":150,\"lastUpdated\":\"2019-06-20T16:00:25Z\",\"purposes\":[");
+        for (int i = 1; i <= GdprData.NUM_PURPOSES; i++) {
+            json.append(i > 1 ? "," : "").append("{\"id\":").append(i).append(",\"name\":\"Purpose ").append(i)
+                    .append("\",\"description\":\"The collection of information, and combination with previously"
+                            + " collected information, to select and deliver advertisements for you.\"}");
+        }
+        json.append("],\"features\":[");
+        for (int i = 1; i <= GdprData.NUM_FEATURES; i++) {
+            json.append(i > 1 ? "," : "").append("{\"id\":").append(i).append(",\"name\":\"Feature ").append(i)
+                    .append("\",\"description\":\"Combining data from offline sources that were initially"
+                            + " collected in other contexts.\"}");
+        }
+        json.append("],\"vendors\":[");
+        for (int i = 1; i <= VENDORS; i++) {
+            json.append(i > 1 ? "," : "").append("{\"id\":").append(i).append(",\"name\":\"Vendor ").append(i)
+                    .append(" Advertising Technologies Ltd\",\"purposeIds\":[1,2,").append(3 + i % 3)
+                    .append("],\"legIntPurposeIds\":[").append(1 + i % 5).append("],\"featureIds\":[")
+                    .append(1 + i % 3).append("],\"policyUrl\":\"https://www.vendor").append(i)
+                    .append(".com/legal/privacy-policy/\"");
+            if (i % 10 == 0) {
+                json.append(",\"deletedDate\":\"2019-02-28T00:00:00Z\"");
+            }
+            json.append('}');
+        }
+        json.append("]}");
+        return json.toString().getBytes("UTF-8");
+    }
+
+    private static GdprData parseTree(byte[] body) throws Exception {
+        return new GdprData(new JSONObject(new String(body, "UTF-8")), null);
+    }
+
+    private static GdprData parseStream(byte[] body) throws Exception {
+        return new GdprData(VendorList.read(new ByteArrayInputStream(body)), null);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void benchmarkParse() throws Exception {
+        byte[] body = newVendorList();
+        GdprData tree = parseTree(body);
+        GdprData stream = parseStream(body);
+        assertEquals(tree.getVendors().size(), stream.getVendors().size());
+        for (int i = 0; i < tree.getVendors().size(); i++) {
+            assertEquals(tree.getVendors().get(i).getName(), stream.getVendors().get(i).getName());
+            assertEquals(tree.getVendors().get(i).getPurposes(), stream.getVendors().get(i).getPurposes());
+        }
+
+        for (int i = 0; i < WARMUP; i++) {
+            parseTree(body);
+            parseStream(body);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseTree(body);
+        }
+        long treeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseStream(body);
+        }
+        long streamNanos = System.nanoTime() - start;
+
+        // the most either path holds at once, on top of the body bytes both start from: the
+        // String and the tree live until GdprData is built, the parser buffers are negligible
+        long baseline = usedHeap();
+        String string = new String(body, "UTF-8");
+        JSONObject json = new JSONObject(string);
+        GdprData data = new GdprData(json, null);
+        long treePeak = usedHeap() - baseline;
+        // keeps them reachable up to the measurement
+        assertTrue(string.length() > json.length() && data.getVendors().size() == VENDORS);
+        string = null;
+        json = null;
+        data = null;
+        baseline = usedHeap();
+        data = parseStream(body);
+        long streamPeak = usedHeap() - baseline;
+
+        Log.i(TAG, String.format(Locale.ROOT, "%d vendors, %d KB: tree %.2f ms, %d KB; stream %.2f ms, %d KB",
+                VENDORS, body.length / 1024, treeNanos / 1e6 / ITERATIONS, treePeak / 1024,
+                streamNanos / 1e6 / ITERATIONS, streamPeak / 1024));
+        assertEquals(VENDORS, data.getVendors().size());
+    }
+}
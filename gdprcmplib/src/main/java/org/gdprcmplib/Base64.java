@@ -1,5 +1,9 @@
 package org.gdprcmplib;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
 class Base64 {
   /** Specify encoding (value is {@code true}). */
   public final static boolean ENCODE = true;
@@ -123,9 +127,16 @@ class Base64 {
       };
 
   // Indicates white space in encoding
-  private final static byte WHITE_SPACE_ENC = -5;
+  final static byte WHITE_SPACE_ENC = -5;
   // Indicates equals sign in encoding
-  private final static byte EQUALS_SIGN_ENC = -1;
+  final static byte EQUALS_SIGN_ENC = -1;
+
+  private final static ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[1024];
+    }
+  };
 
   /** Defeats instantiation. */
   private Base64() {
@@ -308,6 +319,142 @@ class Base64 {
     return outBuff;
   }
 
+  /**
+   * @return the number of characters the web safe encoding of len bytes
+   *         takes
+   */
+  public static int encodedLength(int len, boolean doPadding) {
+    return doPadding ? (len + 2) / 3 * 4 : (len * 4 + 2) / 3;
+  }
+
+  /**
+   * Encodes bytes into web safe Base64 characters written to a caller
+   * supplied array, so that nothing is allocated.  Three bytes are
+   * turned into four characters per iteration.
+   *
+   * @param source the data to convert
+   * @param off offset in array where conversion should begin
+   * @param len length of data to convert
+   * @param dest the array receiving the characters, with room for
+   *        {@link #encodedLength(int, boolean)} characters from destOff on
+   * @param destOff the index of the first character written
+   * @param doPadding is {@code true} to pad result with '=' chars
+   *        if it does not fall on 3 byte boundaries
+   * @return the number of characters written
+   */
+  public static int encodeWebSafe(byte[] source, int off, int len,
+      char[] dest, int destOff, boolean doPadding) {
+    checkRange(dest.length, destOff, encodedLength(len, doPadding));
+    byte[] alphabet = WEBSAFE_ALPHABET;
+    int e = destOff;
+    int end3 = off + len - len % 3;
+    for (int d = off; d < end3; d += 3, e += 4) {
+      int inBuff = (source[d] & 0xff) << 16
+          | (source[d + 1] & 0xff) << 8
+          | (source[d + 2] & 0xff);
+      dest[e] = (char) alphabet[inBuff >>> 18];
+      dest[e + 1] = (char) alphabet[(inBuff >>> 12) & 0x3f];
+      dest[e + 2] = (char) alphabet[(inBuff >>> 6) & 0x3f];
+      dest[e + 3] = (char) alphabet[inBuff & 0x3f];
+    }
+    int left = off + len - end3;
+    if (left > 0) {
+      int inBuff = (source[end3] & 0xff) << 16
+          | (left > 1 ? (source[end3 + 1] & 0xff) << 8 : 0);
+      dest[e++] = (char) alphabet[inBuff >>> 18];
+      dest[e++] = (char) alphabet[(inBuff >>> 12) & 0x3f];
+      if (left > 1) {
+        dest[e++] = (char) alphabet[(inBuff >>> 6) & 0x3f];
+      } else if (doPadding) {
+        dest[e++] = EQUALS_SIGN;
+      }
+      if (doPadding) {
+        dest[e++] = EQUALS_SIGN;
+      }
+    }
+    return e - destOff;
+  }
+
+  /**
+   * Encodes bytes into web safe Base64 written as ASCII bytes to a caller
+   * supplied array.
+   *
+   * @see #encodeWebSafe(byte[], int, int, char[], int, boolean)
+   */
+  public static int encodeWebSafe(byte[] source, int off, int len,
+      byte[] dest, int destOff, boolean doPadding) {
+    checkRange(dest.length, destOff, encodedLength(len, doPadding));
+    byte[] alphabet = WEBSAFE_ALPHABET;
+    int e = destOff;
+    int end3 = off + len - len % 3;
+    for (int d = off; d < end3; d += 3, e += 4) {
+      int inBuff = (source[d] & 0xff) << 16
+          | (source[d + 1] & 0xff) << 8
+          | (source[d + 2] & 0xff);
+      dest[e] = alphabet[inBuff >>> 18];
+      dest[e + 1] = alphabet[(inBuff >>> 12) & 0x3f];
+      dest[e + 2] = alphabet[(inBuff >>> 6) & 0x3f];
+      dest[e + 3] = alphabet[inBuff & 0x3f];
+    }
+    int left = off + len - end3;
+    if (left > 0) {
+      int inBuff = (source[end3] & 0xff) << 16
+          | (left > 1 ? (source[end3 + 1] & 0xff) << 8 : 0);
+      dest[e++] = alphabet[inBuff >>> 18];
+      dest[e++] = alphabet[(inBuff >>> 12) & 0x3f];
+      if (left > 1) {
+        dest[e++] = alphabet[(inBuff >>> 6) & 0x3f];
+      } else if (doPadding) {
+        dest[e++] = EQUALS_SIGN;
+      }
+      if (doPadding) {
+        dest[e++] = EQUALS_SIGN;
+      }
+    }
+    return e - destOff;
+  }
+
+  /**
+   * Encodes bytes into web safe Base64 written as ASCII bytes at the
+   * position of a buffer, which is advanced past them.
+   *
+   * @see #encodeWebSafe(byte[], int, int, char[], int, boolean)
+   */
+  public static int encodeWebSafe(byte[] source, int off, int len,
+      ByteBuffer dest, boolean doPadding) {
+    int n = encodedLength(len, doPadding);
+    if (n > dest.remaining()) {
+      throw new BufferOverflowException();
+    }
+    if (dest.hasArray()) {
+      encodeWebSafe(source, off, len, dest.array(),
+          dest.arrayOffset() + dest.position(), doPadding);
+      dest.position(dest.position() + n);
+    } else {
+      byte[] scratch = scratch(n);
+      encodeWebSafe(source, off, len, scratch, 0, doPadding);
+      dest.put(scratch, 0, n);
+    }
+    return n;
+  }
+
+  private static void checkRange(int length, int off, int n) {
+    if (off < 0 || n > length - off) {
+      throw new IndexOutOfBoundsException("need " + n + " at offset " + off
+          + " of array of length " + length);
+    }
+  }
+
+  // per thread buffer for buffers without accessible array
+  private static byte[] scratch(int size) {
+    byte[] scratch = SCRATCH.get();
+    if (scratch.length < size) {
+      scratch = new byte[Math.max(size, scratch.length * 2)];
+      SCRATCH.set(scratch);
+    }
+    return scratch;
+  }
+
 
   /* ********  D E C O D I N G   M E T H O D S  ******** */
 
@@ -391,8 +538,284 @@ class Base64 {
    * @return the decoded data
    */
   public static byte[] decodeWebSafe(String s) throws Base64DecoderException {
-    byte[] bytes = s.getBytes();
-    return decodeWebSafe(bytes, 0, bytes.length);
+    return decodeWebSafe((CharSequence) s);
+  }
+
+  /**
+   * Decodes web safe Base64 characters straight into a byte array of
+   * the exact decoded size, without first copying the characters into
+   * a byte array.  Padding with '=' is optional and white space is
+   * skipped.
+   *
+   * @param source the web safe Base64 encoded characters
+   * @return the decoded data
+   */
+  public static byte[] decodeWebSafe(CharSequence source)
+      throws Base64DecoderException {
+    return decodeWebSafe(source, 0, source.length());
+  }
+
+  /**
+   * Decodes web safe Base64 characters from an array.
+   *
+   * @see #decodeWebSafe(CharSequence)
+   */
+  public static byte[] decodeWebSafe(char[] source, int off, int len)
+      throws Base64DecoderException {
+    return decodeWebSafe(CharBuffer.wrap(source, off, len), 0, len);
+  }
+
+  /**
+   * Decodes web safe Base64 characters in the range
+   * [off, off + len) of the sequence.
+   *
+   * @see #decodeWebSafe(CharSequence)
+   */
+  public static byte[] decodeWebSafe(CharSequence source, int off, int len)
+      throws Base64DecoderException {
+    byte[] out = new byte[decodedLength(trimEnd(source, off, off + len) - off)];
+    return trim(out, decodeWebSafe(source, off, len, out, 0));
+  }
+
+  /**
+   * Decodes web safe Base64 characters in the range [off, off + len) of
+   * the sequence into a caller supplied array, so that nothing is
+   * allocated.  Padding with '=' is optional and white space is skipped.
+   *
+   * The main loop decodes four characters to three bytes per iteration,
+   * as long as none of them is white space; those are stepped over one
+   * character at a time.
+   *
+   * @param dest the array receiving the bytes, with room for
+   *        {@link #maxDecodedLength(int) maxDecodedLength(len)} bytes
+   *        from destOff on
+   * @param destOff the index of the first byte written
+   * @return the number of bytes written
+   */
+  public static int decodeWebSafe(CharSequence source, int off, int len,
+      byte[] dest, int destOff) throws Base64DecoderException {
+    int end = trimEnd(source, off, off + len);
+    checkRange(dest.length, destOff, decodedLength(end - off));
+    byte[] decodabet = WEBSAFE_DECODABET;
+    int i = off;
+    int d = destOff;
+    int bits = 0;
+    int numBits = 0;
+    while (i < end) {
+      for (; i <= end - 4; i += 4, d += 3) {
+        char c0 = source.charAt(i);
+        char c1 = source.charAt(i + 1);
+        char c2 = source.charAt(i + 2);
+        char c3 = source.charAt(i + 3);
+        if ((c0 | c1 | c2 | c3) >= 0x80) {
+          break;
+        }
+        // any negative entry makes the whole value negative
+        int inBuff = decodabet[c0] << 18 | decodabet[c1] << 12
+            | decodabet[c2] << 6 | decodabet[c3];
+        if (inBuff < 0) {
+          break;
+        }
+        dest[d] = (byte) (inBuff >> 16);
+        dest[d + 1] = (byte) (inBuff >> 8);
+        dest[d + 2] = (byte) inBuff;
+      }
+      // one character at a time up to the next group of four
+      do {
+        if (i == end) {
+          break;
+        }
+        char c = source.charAt(i);
+        byte decoded = c < 0x80 ? decodabet[c] : -9;
+        if (decoded >= 0) {
+          bits = (bits << 6) | decoded;
+          numBits += 6;
+          if (numBits >= 8) {
+            numBits -= 8;
+            dest[d++] = (byte) (bits >> numBits);
+          }
+        } else if (decoded != WHITE_SPACE_ENC) {
+          throw badCharacter(decoded, i, c);
+        }
+        i++;
+      } while (numBits != 0);
+    }
+    checkTrailingBits(numBits, end - 1);
+    return d - destOff;
+  }
+
+  /**
+   * Decodes web safe Base64 characters from an array into a caller
+   * supplied array.
+   *
+   * @see #decodeWebSafe(CharSequence, int, int, byte[], int)
+   */
+  public static int decodeWebSafe(char[] source, int off, int len,
+      byte[] dest, int destOff) throws Base64DecoderException {
+    return decodeWebSafe(CharBuffer.wrap(source), off, len, dest, destOff);
+  }
+
+  /**
+   * Decodes web safe Base64 characters into the position of a buffer,
+   * which is advanced past the decoded bytes.
+   *
+   * @see #decodeWebSafe(CharSequence, int, int, byte[], int)
+   */
+  public static int decodeWebSafe(CharSequence source, int off, int len,
+      ByteBuffer dest) throws Base64DecoderException {
+    int max = decodedLength(trimEnd(source, off, off + len) - off);
+    if (max > dest.remaining()) {
+      throw new BufferOverflowException();
+    }
+    int n;
+    if (dest.hasArray()) {
+      n = decodeWebSafe(source, off, len, dest.array(),
+          dest.arrayOffset() + dest.position());
+      dest.position(dest.position() + n);
+    } else {
+      byte[] scratch = scratch(max);
+      n = decodeWebSafe(source, off, len, scratch, 0);
+      dest.put(scratch, 0, n);
+    }
+    return n;
+  }
+
+  /**
+   * Decodes the remaining web safe Base64 bytes of a buffer, e.g. a
+   * slice of a mapped file, without changing its position.
+   *
+   * @see #decodeWebSafe(CharSequence)
+   */
+  public static byte[] decodeWebSafe(ByteBuffer source)
+      throws Base64DecoderException {
+    int off = source.position();
+    byte[] out = new byte[decodedLength(trimEnd(source, off, source.limit()) - off)];
+    return trim(out, decodeWebSafe(source, out, 0));
+  }
+
+  /**
+   * Decodes the remaining web safe Base64 bytes of a buffer into a caller
+   * supplied array, without changing the position of the buffer.  Offsets
+   * in error messages are relative to the position.
+   *
+   * @see #decodeWebSafe(CharSequence, int, int, byte[], int)
+   */
+  public static int decodeWebSafe(ByteBuffer source, byte[] dest, int destOff)
+      throws Base64DecoderException {
+    int off = source.position();
+    int end = trimEnd(source, off, source.limit());
+    checkRange(dest.length, destOff, decodedLength(end - off));
+    byte[] decodabet = WEBSAFE_DECODABET;
+    int i = off;
+    int d = destOff;
+    int bits = 0;
+    int numBits = 0;
+    while (i < end) {
+      for (; i <= end - 4; i += 4, d += 3) {
+        byte b0 = source.get(i);
+        byte b1 = source.get(i + 1);
+        byte b2 = source.get(i + 2);
+        byte b3 = source.get(i + 3);
+        if ((b0 | b1 | b2 | b3) < 0) {
+          break;
+        }
+        int inBuff = decodabet[b0] << 18 | decodabet[b1] << 12
+            | decodabet[b2] << 6 | decodabet[b3];
+        if (inBuff < 0) {
+          break;
+        }
+        dest[d] = (byte) (inBuff >> 16);
+        dest[d + 1] = (byte) (inBuff >> 8);
+        dest[d + 2] = (byte) inBuff;
+      }
+      do {
+        if (i == end) {
+          break;
+        }
+        byte b = source.get(i);
+        byte decoded = b >= 0 ? decodabet[b] : -9;
+        if (decoded >= 0) {
+          bits = (bits << 6) | decoded;
+          numBits += 6;
+          if (numBits >= 8) {
+            numBits -= 8;
+            dest[d++] = (byte) (bits >> numBits);
+          }
+        } else if (decoded != WHITE_SPACE_ENC) {
+          throw badCharacter(decoded, i - off, (char) (b & 0xff));
+        }
+        i++;
+      } while (numBits != 0);
+    }
+    checkTrailingBits(numBits, end - off - 1);
+    return d - destOff;
+  }
+
+  // padding and trailing white space do not contribute any bits
+  private static int trimEnd(CharSequence source, int off, int end) {
+    while (end > off && isPaddingOrWhiteSpace(source.charAt(end - 1))) {
+      end--;
+    }
+    return end;
+  }
+
+  private static int trimEnd(ByteBuffer source, int off, int end) {
+    while (end > off && isPaddingOrWhiteSpace((char) (source.get(end - 1) & 0xff))) {
+      end--;
+    }
+    return end;
+  }
+
+  /**
+   * @return the 6 bit value of the web safe Base64 character c, or
+   *         {@link #WHITE_SPACE_ENC}, {@link #EQUALS_SIGN_ENC} or another
+   *         negative value for characters outside the alphabet
+   */
+  static byte decodeWebSafeChar(int c) {
+    return c >= 0 && c < 0x80 ? WEBSAFE_DECODABET[c] : -9;
+  }
+
+  private static boolean isPaddingOrWhiteSpace(char c) {
+    return c < 0x80 && (c == EQUALS_SIGN || WEBSAFE_DECODABET[c] == WHITE_SPACE_ENC);
+  }
+
+  /**
+   * @return an upper bound of the number of bytes numChars web safe
+   *         Base64 characters decode to
+   */
+  public static int maxDecodedLength(int numChars) {
+    return decodedLength(numChars);
+  }
+
+  // upper bound, exact unless white space is embedded in the value
+  private static int decodedLength(int numChars) {
+    return (int) (numChars * 6L / 8);
+  }
+
+  private static Base64DecoderException badCharacter(byte decoded, int i, char c) {
+    if (decoded == EQUALS_SIGN_ENC) {
+      return new Base64DecoderException(
+          "padding byte '=' falsely signals end of encoded value at offset " + i);
+    }
+    return new Base64DecoderException("Bad Base64 input character at " + i
+        + ": " + (int) c + "(decimal)");
+  }
+
+  private static void checkTrailingBits(int numBits, int last)
+      throws Base64DecoderException {
+    if (numBits == 6) {
+      throw new Base64DecoderException("single trailing character at offset " + last);
+    }
+  }
+
+  private static byte[] trim(byte[] out, int length) {
+    if (length == out.length) {
+      return out;
+    }
+    // only reached when white space was skipped inside the value
+    byte[] trimmed = new byte[length];
+    System.arraycopy(out, 0, trimmed, 0, length);
+    return trimmed;
   }
 
   /**
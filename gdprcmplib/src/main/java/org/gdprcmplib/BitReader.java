@@ -0,0 +1,140 @@
+package org.gdprcmplib;
+
+import java.text.ParseException;
+
+/**
+ * Reads big endian bit fields out of a byte array.
+ *
+ * Instead of walking a field one bit at a time, every read loads the bytes covering the field
+ * into a single 64 bit window and extracts the value with one shift.  All reads are bounds
+ * checked and fail with a {@link ParseException} carrying the offending bit offset.
+ */
+final class BitReader {
+
+    private byte[] bytes;
+    private int byteOffset;
+    private int bitLength;
+
+    BitReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes the backing array; it is not copied
+     * @param off index of the first byte of the bit string
+     * @param len number of bytes in the bit string
+     */
+    BitReader(byte[] bytes, int off, int len) {
+        reset(bytes, off, len);
+    }
+
+    /**
+     * Points this reader at another bit string, see {@link #BitReader(byte[], int, int)}.
+     */
+    void reset(byte[] bytes, int off, int len) {
+        if (off < 0 || len < 0 || off + len > bytes.length) {
+            throw new IndexOutOfBoundsException("off: " + off + " len: " + len + " size: " + bytes.length);
+        }
+        this.bytes = bytes;
+        this.byteOffset = off;
+        this.bitLength = len * 8;
+    }
+
+    /**
+     * @return the number of bits in the bit string
+     */
+    int length() {
+        return bitLength;
+    }
+
+    /**
+     * @param index the nth bit to get from the bit string
+     * @return true if the bit is switched to 1, false otherwise
+     * @throws ParseException if index lies outside of the bit string
+     */
+    boolean getBit(int index) throws ParseException {
+        checkRange(index, 1);
+        return readBit(index);
+    }
+
+    /**
+     * Interprets size bits starting at startInclusive as a big endian int.
+     *
+     * @throws ParseException when the bits cannot fit in an int or lie outside of the bit string
+     */
+    int getInt(int startInclusive, int size) throws ParseException {
+        if (size > Integer.SIZE) {
+            throw new ParseException("can't fit bit range in int.", startInclusive);
+        }
+        return (int) getLong(startInclusive, size);
+    }
+
+    /**
+     * Interprets size bits starting at startInclusive as a big endian long.
+     *
+     * @throws ParseException when the bits cannot fit in a long or lie outside of the bit string
+     */
+    long getLong(int startInclusive, int size) throws ParseException {
+        if (size > Long.SIZE) {
+            throw new ParseException("can't fit bit range in long.", startInclusive);
+        }
+        checkRange(startInclusive, size);
+        return readLong(startInclusive, size);
+    }
+
+    /**
+     * Unchecked variant of {@link #getBit(int)} for callers that have already validated the range.
+     */
+    boolean readBit(int index) {
+        return ((bytes[byteOffset + (index >>> 3)] >> (7 - (index & 7))) & 1) != 0;
+    }
+
+    /**
+     * Unchecked variant of {@link #getInt(int, int)} for callers that have already validated the range.
+     */
+    int readInt(int startInclusive, int size) {
+        return (int) readLong(startInclusive, size);
+    }
+
+    /**
+     * Unchecked variant of {@link #getLong(int, int)} for callers that have already validated the
+     * range; size must be between 0 and 64.
+     */
+    long readLong(int startInclusive, int size) {
+        if (size == 0) {
+            return 0;
+        }
+        final int first = byteOffset + (startInclusive >>> 3);
+        final int shift = startInclusive & 7;
+        // bytes touched by the field, at most 9 when a 64 bit field is not byte aligned
+        final int count = (shift + size + 7) >>> 3;
+        final int windowBytes = count > 8 ? 8 : count;
+        long window = 0;
+        for (int i = 0; i < windowBytes; i++) {
+            window |= (bytes[first + i] & 0xFFL) << (56 - (i << 3));
+        }
+        window <<= shift;
+        if (count > 8) {
+            window |= (bytes[first + 8] & 0xFF) >>> (8 - shift);
+        }
+        return window >>> (Long.SIZE - size);
+    }
+
+    /**
+     * Interprets the given interval as a long holding the number of demiseconds since the unix
+     * epoch and returns the equivalent number of milliseconds.
+     */
+    long getInstantFromEpochDemiseconds(int startInclusive, int size) throws ParseException {
+        return getLong(startInclusive, size) * 100;
+    }
+
+    /**
+     * @throws ParseException if the interval does not lie entirely within the bit string
+     */
+    void checkRange(int startInclusive, int size) throws ParseException {
+        if (startInclusive < 0 || size < 0 || startInclusive > bitLength - size) {
+            throw new ParseException("bit range " + startInclusive + "+" + size
+                    + " exceeds bit string of length " + bitLength, startInclusive);
+        }
+    }
+}
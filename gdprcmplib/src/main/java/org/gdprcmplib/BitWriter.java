@@ -0,0 +1,106 @@
+package org.gdprcmplib;
+
+/**
+ * Writes big endian bit fields into a byte array sized up front, the counterpart of
+ * {@link BitReader}.
+ *
+ * Fields are packed straight into the array, a byte at a time, so encoding a consent string
+ * creates no garbage besides the array itself.  Bits past the last field are left at 0, which is
+ * the padding the consent string format asks for.  A writer can also wrap an existing bit string
+ * to overwrite some of its fields in place.
+ */
+final class BitWriter {
+
+    private final byte[] bytes;
+    private final int bitLength;
+    private int position;
+
+    /**
+     * @param bitLength the number of bits that will be written
+     */
+    BitWriter(int bitLength) {
+        if (bitLength < 0) {
+            throw new IllegalArgumentException("bitLength: " + bitLength);
+        }
+        this.bytes = new byte[(bitLength + 7) >>> 3];
+        this.bitLength = bitLength;
+    }
+
+    /**
+     * Wraps an existing bit string, whose fields are overwritten in place.
+     */
+    BitWriter(byte[] bytes) {
+        this.bytes = bytes;
+        this.bitLength = bytes.length * 8;
+    }
+
+    /**
+     * @return the number of bits written so far
+     */
+    int position() {
+        return position;
+    }
+
+    /**
+     * Moves to the bit at which the next field is written.
+     */
+    void position(int position) {
+        if (position < 0 || position > bitLength) {
+            throw new IndexOutOfBoundsException("position: " + position + " length: " + bitLength);
+        }
+        this.position = position;
+    }
+
+    void writeBit(boolean bit) {
+        checkCapacity(1);
+        if (bit) {
+            bytes[position >>> 3] |= 0x80 >>> (position & 7);
+        } else {
+            bytes[position >>> 3] &= ~(0x80 >>> (position & 7));
+        }
+        position++;
+    }
+
+    /**
+     * Writes the size lowest bits of value, most significant first; size must be between 0 and 32.
+     */
+    void writeInt(int value, int size) {
+        writeLong(value, size);
+    }
+
+    /**
+     * Writes the size lowest bits of value, most significant first; size must be between 0 and 64.
+     */
+    void writeLong(long value, int size) {
+        checkCapacity(size);
+        int pos = position;
+        int remaining = size;
+        while (remaining > 0) {
+            int free = 8 - (pos & 7);
+            int count = free < remaining ? free : remaining;
+            int mask = ((1 << count) - 1) << (free - count);
+            int chunk = (int) (value >>> (remaining - count)) << (free - count);
+            bytes[pos >>> 3] = (byte) ((bytes[pos >>> 3] & ~mask) | (chunk & mask));
+            pos += count;
+            remaining -= count;
+        }
+        position = pos;
+    }
+
+    /**
+     * @return the backing array; every bit announced to the constructor must have been written
+     */
+    byte[] toByteArray() {
+        if (position != bitLength) {
+            throw new IllegalStateException("wrote " + position + " of " + bitLength + " bits");
+        }
+        return bytes;
+    }
+
+    private void checkCapacity(int size) {
+        if (size < 0 || size > bitLength - position) {
+            throw new IndexOutOfBoundsException("bit range " + position + "+" + size
+                    + " exceeds bit string of length " + bitLength);
+        }
+    }
+}
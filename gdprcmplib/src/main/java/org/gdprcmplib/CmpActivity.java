@@ -9,8 +9,6 @@ import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
 import android.view.View;
 
-import org.json.JSONObject;
-
 import java.util.Date;
 
 public class CmpActivity extends AppCompatActivity {
@@ -47,20 +45,7 @@ public class CmpActivity extends AppCompatActivity {
                 GdprData data = null;
                 try {
                     loadConsentString();
-                    String lang = (GDPRUtil.getLanguage(CmpActivity.this)+"").toLowerCase();
-                    JSONObject langJSON=null;
-                    String langUrl=null;
-                    if (!TextUtils.isEmpty(lang) && !lang.equalsIgnoreCase("en")) {
-                        try {
-                            langUrl = Config.LANGUAGE_SPECIFIC_URL.replace("REPLACEME",lang);
-                            MLog.d(TAG,"langUrl: "+lang + " " + langUrl);
-                            langJSON = new HttpMessage(langUrl).getJSONObject();
-                        }catch(Exception e) {
-                            MLog.e(TAG,"Failed to get language specific remote data for: "+langUrl);
-                        }
-                    }
-                    JSONObject vendorJSON = new HttpMessage(Config.VENDOR_LIST_URL).getJSONObject();
-                    data = new GdprData(vendorJSON, langJSON);
+                    data = VendorListLoader.load(CmpActivity.this);
                     if (data != null && c != null) {
                         data.initStateWith(c);
                     }
@@ -18,8 +18,6 @@ import android.widget.CheckBox;
 import android.widget.TextView;
 import android.widget.ToggleButton;
 
-import org.json.JSONObject;
-
 import java.util.Date;
 
 public class CmpDetailsActivity extends AppCompatActivity {
@@ -62,19 +60,7 @@ public class CmpDetailsActivity extends AppCompatActivity {
                         //with the rangeConsent string
                     } else {
                         MLog.d(TAG,"fetch remote gdpr d");
-                        String lang = (GDPRUtil.getLanguage(CmpDetailsActivity.this)+"").toLowerCase();
-                        JSONObject langJSON=null;
-                        String langUrl=null;
-                        if (!TextUtils.isEmpty(lang) && !lang.equalsIgnoreCase("en")) {
-                            try {
-                                langUrl = Config.LANGUAGE_SPECIFIC_URL.replace("REPLACEME", lang);
-                                langJSON = new HttpMessage(langUrl).getJSONObject();
-                            }catch(Exception e) {
-                                MLog.e(TAG,"Failed to get language specific remote data for: "+langUrl);
-                            }
-                        }
-                        JSONObject vendorJSON = new HttpMessage(Config.VENDOR_LIST_URL).getJSONObject();
-                        data = new GdprData(vendorJSON, langJSON);
+                        data = VendorListLoader.load(CmpDetailsActivity.this);
                         if (data != null && c != null) {
                             data.initStateWith(c);
                         }
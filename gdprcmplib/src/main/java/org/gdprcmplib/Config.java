@@ -10,6 +10,8 @@ final class Config {
     static final int CMP_SCREEN_ID_1 = 1;
     static final int CMP_SCREEN_ID_2 = 2;
     static final int DEFAULT_MAX_VENDOR_ID = 121;
+    static final long HTTP_CACHE_MAX_SIZE = 2 * 1024 * 1024; //vendor list and language specific purposes
+    static final long LANGUAGE_FETCH_TIMEOUT_MILLIS = 3000; //then falls back to english purposes
 
     public static final String CMP_ALLOW_BACK_BUTTON = "bundle_key_cmp_allow_back_button";
     public static final String CMP_DEFAULT_CONSENT_ALL = "bundle_key_cmp_default_consent_all";
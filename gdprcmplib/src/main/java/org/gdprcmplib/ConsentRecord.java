@@ -0,0 +1,45 @@
+package org.gdprcmplib;
+
+/**
+ * The content of one consent string: the header fields, the allowed purposes and the allowed
+ * vendors.  Records are immutable and can be handed to {@link ConsentStringEncoder} from any
+ * thread.
+ */
+final class ConsentRecord {
+
+    final int version;
+    final long consentRecordCreated;
+    final long consentRecordLastUpdated;
+    final int cmpId;
+    final int cmpVersion;
+    final int consentScreen;
+    final String consentLanguage;
+    final int vendorListVersion;
+    final int purposeMask;
+    final VendorBitmap vendors;
+    final int maxVendorId;
+
+    /**
+     * @param purposeMask the allowed purposes, bit purposeId - 1 for every purpose, see {@link PurposeSet}
+     * @param vendors the allowed vendors, owned by the record from now on and so not to be modified
+     * @param maxVendorId the highest vendor id of the vendor list
+     */
+    ConsentRecord(int version, long consentRecordCreated, long consentRecordLastUpdated, int cmpId,
+                  int cmpVersion, int consentScreen, String consentLanguage, int vendorListVersion,
+                  int purposeMask, VendorBitmap vendors, int maxVendorId) {
+        if (consentLanguage == null || consentLanguage.length() != 2) {
+            throw new IllegalArgumentException("consentLanguage: " + consentLanguage);
+        }
+        this.version = version;
+        this.consentRecordCreated = consentRecordCreated;
+        this.consentRecordLastUpdated = consentRecordLastUpdated;
+        this.cmpId = cmpId;
+        this.cmpVersion = cmpVersion;
+        this.consentScreen = consentScreen;
+        this.consentLanguage = consentLanguage;
+        this.vendorListVersion = vendorListVersion;
+        this.purposeMask = purposeMask;
+        this.vendors = vendors;
+        this.maxVendorId = maxVendorId;
+    }
+}
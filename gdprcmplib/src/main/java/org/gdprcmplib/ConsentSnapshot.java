@@ -0,0 +1,92 @@
+package org.gdprcmplib;
+
+/**
+ * Immutable, fully parsed view of the stored consent string.
+ *
+ * A snapshot never changes once created; saving new consent publishes a new snapshot in place of
+ * the old one.  It can therefore be shared between threads freely, and its queries neither lock
+ * nor allocate.  Get the current one from {@link GdprCmp#getSnapshot(android.content.Context)}.
+ */
+public final class ConsentSnapshot {
+
+    static final ConsentSnapshot EMPTY = new ConsentSnapshot(null, 0, 0, new VendorBitmap(0), false);
+
+    private final String consentString;
+    private final int vendorListVersion;
+    private final int purposeMask;
+    private final VendorBitmap vendors;
+    private final boolean allowedOutsideOfVendors;
+
+    private ConsentSnapshot(String consentString, int vendorListVersion, int purposeMask,
+                            VendorBitmap vendors, boolean allowedOutsideOfVendors) {
+        this.consentString = consentString;
+        this.vendorListVersion = vendorListVersion;
+        this.purposeMask = purposeMask;
+        this.vendors = vendors;
+        this.allowedOutsideOfVendors = allowedOutsideOfVendors;
+    }
+
+    /**
+     * Parses the consent string.  A missing or malformed string allows nothing.
+     */
+    static ConsentSnapshot of(String consentString) {
+        if (consentString == null) {
+            return EMPTY;
+        }
+        try {
+            ConsentStringParser parser = new ConsentStringParser(Base64.decodeWebSafe(consentString), true);
+            // the parser is dropped here, so its bitmap can no longer change
+            return new ConsentSnapshot(consentString, parser.getVendorListVersion(), parser.getPurposeMask(),
+                    parser.normalizedVendors(), parser.isAllowedOutsideOfBitmap());
+        } catch (Exception e) {
+            MLog.e("ConsentSnapshot", "of: " + e.getMessage());
+        }
+        return new ConsentSnapshot(consentString, 0, 0, EMPTY.vendors, false);
+    }
+
+    /**
+     * @return the consent string this snapshot was parsed from, null if none is stored
+     */
+    public String getConsentString() {
+        return consentString;
+    }
+
+    /**
+     * @return the vendor list version used in creating the consent string, 0 if none is stored
+     */
+    public int getVendorListVersion() {
+        return vendorListVersion;
+    }
+
+    /**
+     * @return the allowed purposes as a mask where bit purposeId - 1 is set when the purpose is allowed
+     */
+    public int getPurposeMask() {
+        return purposeMask;
+    }
+
+    /**
+     * @return whether the user consented to the purpose.  The lowest purpose ID is 1.
+     */
+    public boolean isPurposeAllowed(int purposeId) {
+        return PurposeSet.contains(purposeMask, purposeId);
+    }
+
+    /**
+     * @param requiredMask the purposes needed, bit purposeId - 1 for every purpose
+     * @return whether the user consented to every purpose of requiredMask
+     */
+    public boolean arePurposesAllowed(int requiredMask) {
+        return (purposeMask & requiredMask) == requiredMask;
+    }
+
+    /**
+     * @return whether the user consented to the vendor.  The lowest vendor ID is 1.
+     */
+    public boolean isVendorAllowed(int vendorId) {
+        if (vendorId >= 1 && vendorId <= vendors.getMaxVendorId()) {
+            return vendors.get(vendorId);
+        }
+        return allowedOutsideOfVendors;
+    }
+}
@@ -0,0 +1,236 @@
+package org.gdprcmplib;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+import static org.gdprcmplib.ConsentStringParser.CMP_ID_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.CMP_ID_SIZE;
+import static org.gdprcmplib.ConsentStringParser.CMP_VERSION_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.CMP_VERSION_SIZE;
+import static org.gdprcmplib.ConsentStringParser.CONSENT_LANGUAGE_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.CONSENT_LANGUAGE_SIZE;
+import static org.gdprcmplib.ConsentStringParser.CONSENT_SCREEN_SIZE;
+import static org.gdprcmplib.ConsentStringParser.CONSENT_SCREEN_SIZE_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.CREATED_BIT_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.CREATED_BIT_SIZE;
+import static org.gdprcmplib.ConsentStringParser.DEFAULT_CONSENT_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.ENCODING_TYPE_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.ENCODING_TYPE_SIZE;
+import static org.gdprcmplib.ConsentStringParser.MAX_VENDOR_ID_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.MAX_VENDOR_ID_SIZE;
+import static org.gdprcmplib.ConsentStringParser.NUM_ENTRIES_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.NUM_ENTRIES_SIZE;
+import static org.gdprcmplib.ConsentStringParser.PURPOSES_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.PURPOSES_SIZE;
+import static org.gdprcmplib.ConsentStringParser.RANGE_ENTRY_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.UPDATED_BIT_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.UPDATED_BIT_SIZE;
+import static org.gdprcmplib.ConsentStringParser.VENDOR_BITFIELD_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.VENDOR_ENCODING_RANGE;
+import static org.gdprcmplib.ConsentStringParser.VENDOR_ID_SIZE;
+import static org.gdprcmplib.ConsentStringParser.VENDOR_LIST_VERSION_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.VENDOR_LIST_VERSION_SIZE;
+import static org.gdprcmplib.ConsentStringParser.VERSION_BIT_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.VERSION_BIT_SIZE;
+
+/**
+ * Read-only view over the decoded bytes of a consent string.
+ *
+ * Unlike {@link ConsentStringParser} nothing is decoded up front: every accessor reads its field
+ * straight from the wrapped bytes when called, so queries such as {@link #isVendorAllowed(int)}
+ * or {@link #isPurposeAllowed(int)} do not allocate.  The layout is validated once when the view
+ * is created.  The wrapped bytes are not copied and must not be modified while the view is in use.
+ */
+final class ConsentString {
+
+    private static final int LETTERS = 26;
+    private static final String[] LANGUAGES = new String[LETTERS * LETTERS];
+
+    static {
+        for (int i = 0; i < LETTERS; i++) {
+            for (int j = 0; j < LETTERS; j++) {
+                LANGUAGES[i * LETTERS + j] = new String(new char[]{(char) ('A' + i), (char) ('A' + j)});
+            }
+        }
+    }
+
+    private final BitReader bits;
+
+    /**
+     * @param bytes the decoded consent string
+     * @throws ParseException if the bytes are too short for the fields they declare
+     */
+    ConsentString(byte[] bytes) throws ParseException {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes array holding the decoded consent string
+     * @param off index of the first byte of the consent string
+     * @param len length of the consent string in bytes
+     * @throws ParseException if the bytes are too short for the fields they declare
+     */
+    ConsentString(byte[] bytes, int off, int len) throws ParseException {
+        this.bits = new BitReader(bytes, off, len);
+        validate(bits);
+    }
+
+    /**
+     * Wraps the remaining bytes of the buffer.  Array backed buffers are wrapped in place, direct
+     * buffers are copied once.  The position of the buffer is not changed.
+     */
+    static ConsentString wrap(ByteBuffer buffer) throws ParseException {
+        if (buffer.hasArray()) {
+            return new ConsentString(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new ConsentString(bytes);
+    }
+
+    /**
+     * Decodes a url and filename safe base64 consent string, with or without '=' padding, straight
+     * from its characters.
+     */
+    static ConsentString decode(CharSequence consentString) throws ParseException, Base64DecoderException {
+        return new ConsentString(Base64.decodeWebSafe(consentString));
+    }
+
+    private static void validate(BitReader bits) throws ParseException {
+        bits.checkRange(0, ENCODING_TYPE_OFFSET + ENCODING_TYPE_SIZE);
+        if (bits.readInt(ENCODING_TYPE_OFFSET, ENCODING_TYPE_SIZE) == VENDOR_ENCODING_RANGE) {
+            bits.checkRange(DEFAULT_CONSENT_OFFSET, RANGE_ENTRY_OFFSET - DEFAULT_CONSENT_OFFSET);
+            int numEntries = bits.readInt(NUM_ENTRIES_OFFSET, NUM_ENTRIES_SIZE);
+            int offset = RANGE_ENTRY_OFFSET;
+            for (int i = 0; i < numEntries; i++) {
+                bits.checkRange(offset, 1);
+                offset += bits.readBit(offset) ? 1 + 2 * VENDOR_ID_SIZE : 1 + VENDOR_ID_SIZE;
+            }
+            bits.checkRange(RANGE_ENTRY_OFFSET, offset - RANGE_ENTRY_OFFSET);
+        } else {
+            bits.checkRange(VENDOR_BITFIELD_OFFSET, bits.readInt(MAX_VENDOR_ID_OFFSET, MAX_VENDOR_ID_SIZE));
+        }
+    }
+
+    /**
+     * Returns the shared instance of the two letter language code held in a 12 bit field, where
+     * each letter is encoded in six bits with 0=A and 25=Z.
+     */
+    static String languageOf(int code) {
+        int first = (code >>> 6) & 0x3f;
+        int second = code & 0x3f;
+        if (first < LETTERS && second < LETTERS) {
+            return LANGUAGES[first * LETTERS + second];
+        }
+        // out of spec letters, not worth interning
+        return new String(new char[]{
+                Character.toUpperCase((char) ('A' + first)),
+                Character.toUpperCase((char) ('A' + second))});
+    }
+
+    /**
+     * @return the version of the cookie format used in this consent string
+     */
+    int getVersion() {
+        return bits.readInt(VERSION_BIT_OFFSET, VERSION_BIT_SIZE);
+    }
+
+    /**
+     * @return the time at which the consent record was created, in milliseconds since the epoch
+     */
+    long getConsentRecordCreated() {
+        return bits.readLong(CREATED_BIT_OFFSET, CREATED_BIT_SIZE) * 100;
+    }
+
+    /**
+     * @return the time at which the consent record was last updated, in milliseconds since the epoch
+     */
+    long getConsentRecordLastUpdated() {
+        return bits.readLong(UPDATED_BIT_OFFSET, UPDATED_BIT_SIZE) * 100;
+    }
+
+    int getCmpId() {
+        return bits.readInt(CMP_ID_OFFSET, CMP_ID_SIZE);
+    }
+
+    int getCmpVersion() {
+        return bits.readInt(CMP_VERSION_OFFSET, CMP_VERSION_SIZE);
+    }
+
+    int getConsentScreen() {
+        return bits.readInt(CONSENT_SCREEN_SIZE_OFFSET, CONSENT_SCREEN_SIZE);
+    }
+
+    /**
+     * @return the two letter ISO639-1 language code, always the same instance for a given code
+     */
+    String getConsentLanguage() {
+        return languageOf(bits.readInt(CONSENT_LANGUAGE_OFFSET, CONSENT_LANGUAGE_SIZE));
+    }
+
+    int getVendorListVersion() {
+        return bits.readInt(VENDOR_LIST_VERSION_OFFSET, VENDOR_LIST_VERSION_SIZE);
+    }
+
+    int getMaxVendorId() {
+        return bits.readInt(MAX_VENDOR_ID_OFFSET, MAX_VENDOR_ID_SIZE);
+    }
+
+    /**
+     * @return 1 for range encoding, 0 for bitfield encoding
+     */
+    int getVendorEncodingType() {
+        return bits.readInt(ENCODING_TYPE_OFFSET, ENCODING_TYPE_SIZE);
+    }
+
+    /**
+     * @return the default consent of a range encoded string, false for bitfield encoding
+     */
+    boolean getDefaultConsent() {
+        return getVendorEncodingType() == VENDOR_ENCODING_RANGE && bits.readBit(DEFAULT_CONSENT_OFFSET);
+    }
+
+    /**
+     * @return whether the user consented to the purpose.  The lowest purpose ID is 1.
+     */
+    boolean isPurposeAllowed(int purposeId) {
+        if (purposeId < 1 || purposeId > PURPOSES_SIZE) {
+            return false;
+        }
+        return bits.readBit(PURPOSES_OFFSET + purposeId - 1);
+    }
+
+    /**
+     * @return whether the user consented to the vendor.  The lowest vendor ID is 1.
+     */
+    boolean isVendorAllowed(int vendorId) {
+        if (getVendorEncodingType() == VENDOR_ENCODING_RANGE) {
+            return isInRangeEntries(vendorId) != bits.readBit(DEFAULT_CONSENT_OFFSET);
+        }
+        if (vendorId < 1 || vendorId > getMaxVendorId()) {
+            return false;
+        }
+        return bits.readBit(VENDOR_BITFIELD_OFFSET + vendorId - 1);
+    }
+
+    private boolean isInRangeEntries(int vendorId) {
+        int numEntries = bits.readInt(NUM_ENTRIES_OFFSET, NUM_ENTRIES_SIZE);
+        int offset = RANGE_ENTRY_OFFSET;
+        for (int i = 0; i < numEntries; i++) {
+            if (bits.readBit(offset)) {
+                int start = bits.readInt(offset + 1, VENDOR_ID_SIZE);
+                int end = bits.readInt(offset + 1 + VENDOR_ID_SIZE, VENDOR_ID_SIZE);
+                if (vendorId >= start && vendorId <= end) {
+                    return true;
+                }
+                offset += 1 + 2 * VENDOR_ID_SIZE;
+            } else {
+                if (vendorId == bits.readInt(offset + 1, VENDOR_ID_SIZE)) {
+                    return true;
+                }
+                offset += 1 + VENDOR_ID_SIZE;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,135 @@
+package org.gdprcmplib;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.gdprcmplib.ConsentStringParser.PURPOSES_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.PURPOSES_SIZE;
+
+/**
+ * Stateless encoder turning {@link ConsentRecord}s into url and filename safe base64 consent
+ * strings, for generating strings in bulk.  Every string uses the shortest vendor encoding, see
+ * {@link VendorEncoding}.  All methods are thread safe.
+ */
+final class ConsentStringEncoder {
+
+    /**
+     * Number of records one task encodes in {@link #encodeAll(ConsentRecord[], Appendable, ExecutorService)}.
+     */
+    static final int CHUNK_SIZE = 1024;
+
+    private static final ThreadLocal<char[]> SCRATCH = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[256];
+        }
+    };
+
+    private ConsentStringEncoder() {
+    }
+
+    /**
+     * @return the decoded form of the consent string for the record
+     */
+    static byte[] toBytes(ConsentRecord record) {
+        VendorEncoding vendors = VendorEncoding.shortest(record.vendors, record.maxVendorId);
+        BitWriter bits = new BitWriter(PURPOSES_OFFSET + PURPOSES_SIZE + vendors.bitLength());
+        ConsentStringParser.writeHeader(bits, record.version, record.consentRecordCreated,
+                record.consentRecordLastUpdated, record.cmpId, record.cmpVersion, record.consentScreen,
+                record.consentLanguage, record.vendorListVersion);
+        //24 purposes, purpose 1 first
+        bits.writeInt(Integer.reverse(record.purposeMask) >>> (Integer.SIZE - PURPOSES_SIZE), PURPOSES_SIZE);
+        vendors.write(bits, record.vendors);
+        return bits.toByteArray();
+    }
+
+    static String encode(ConsentRecord record) {
+        return Base64.encodeWebSafe(toBytes(record), true);
+    }
+
+    /**
+     * Appends the consent string for the record to out, encoded through a per thread buffer
+     * rather than a String.
+     */
+    static void encode(ConsentRecord record, Appendable out) throws IOException {
+        byte[] bytes = toBytes(record);
+        int length = Base64.encodedLength(bytes.length, true);
+        char[] chars = SCRATCH.get();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            SCRATCH.set(chars);
+        }
+        Base64.encodeWebSafe(bytes, 0, bytes.length, chars, 0, true);
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(chars, 0, length);
+        } else if (out instanceof Writer) {
+            ((Writer) out).write(chars, 0, length);
+        } else {
+            out.append(CharBuffer.wrap(chars, 0, length));
+        }
+    }
+
+    /**
+     * Writes the consent string of every record to out, each followed by a newline.
+     */
+    static void encodeAll(ConsentRecord[] records, Appendable out) throws IOException {
+        encodeAll(records, 0, records.length, out);
+    }
+
+    private static void encodeAll(ConsentRecord[] records, int from, int to, Appendable out) throws IOException {
+        for (int i = from; i < to; i++) {
+            encode(records[i], out);
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Parallel variant of {@link #encodeAll(ConsentRecord[], Appendable)}: chunks of
+     * {@link #CHUNK_SIZE} records are encoded on the executor and written to out in the order of
+     * the records, from the calling thread.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting; the
+     *         remaining tasks are cancelled
+     */
+    static void encodeAll(final ConsentRecord[] records, Appendable out, ExecutorService executor)
+            throws IOException, InterruptedException {
+        List<Future<StringBuilder>> chunks = new ArrayList<>(records.length / CHUNK_SIZE + 1);
+        try {
+            for (int from = 0; from < records.length; from += CHUNK_SIZE) {
+                final int start = from;
+                final int end = Math.min(records.length, from + CHUNK_SIZE);
+                chunks.add(executor.submit(new Callable<StringBuilder>() {
+                    @Override
+                    public StringBuilder call() throws IOException {
+                        StringBuilder chunk = new StringBuilder((end - start) * 64);
+                        encodeAll(records, start, end, chunk);
+                        return chunk;
+                    }
+                }));
+            }
+            for (Future<StringBuilder> chunk : chunks) {
+                out.append(chunk.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<StringBuilder> chunk : chunks) {
+                chunk.cancel(true);
+            }
+        }
+    }
+}
@@ -1,11 +1,9 @@
 package org.gdprcmplib;
 
 import java.text.ParseException;
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 /**
  * This class implements a parser for the IAB rangeConsent string as specified in
@@ -20,39 +18,38 @@ class ConsentStringParser {
 
     private static final String TAG = "ConsentStringParser";
 
-    private static final int VENDOR_ENCODING_RANGE = 1;
-
-    private static final int VERSION_BIT_OFFSET = 0;
-    private static final int VERSION_BIT_SIZE = 6;
-    private static final int CREATED_BIT_OFFSET = 6;
-    private static final int CREATED_BIT_SIZE = 36;
-    private static final int UPDATED_BIT_OFFSET = 42;
-    private static final int UPDATED_BIT_SIZE = 36;
-    private static final int CMP_ID_OFFSET = 78;
-    private static final int CMP_ID_SIZE = 12;
-    private static final int CMP_VERSION_OFFSET = 90;
-    private static final int CMP_VERSION_SIZE = 12;
-    private static final int CONSENT_SCREEN_SIZE_OFFSET = 102;
-    private static final int CONSENT_SCREEN_SIZE = 6;
-    private static final int CONSENT_LANGUAGE_OFFSET = 108;
-    private static final int CONSENT_LANGUAGE_SIZE = 12;
-    private static final int VENDOR_LIST_VERSION_OFFSET = 120;
-    private static final int VENDOR_LIST_VERSION_SIZE = 12;
-    private static final int PURPOSES_OFFSET = 132;
-    private static final int PURPOSES_SIZE = 24;
-    private static final int MAX_VENDOR_ID_OFFSET = 156;
-    private static final int MAX_VENDOR_ID_SIZE = 16;
-    private static final int ENCODING_TYPE_OFFSET = 172;
-    private static final int ENCODING_TYPE_SIZE = 1;
-    private static final int VENDOR_BITFIELD_OFFSET = 173;
-    private static final int DEFAULT_CONSENT_OFFSET = 173;
-    private static final int NUM_ENTRIES_OFFSET = 174;
-    private static final int NUM_ENTRIES_SIZE = 12;
-    private static final int RANGE_ENTRY_OFFSET = 186;
-    private static final int VENDOR_ID_SIZE = 16;
+    static final int VENDOR_ENCODING_RANGE = 1;
+
+    static final int VERSION_BIT_OFFSET = 0;
+    static final int VERSION_BIT_SIZE = 6;
+    static final int CREATED_BIT_OFFSET = 6;
+    static final int CREATED_BIT_SIZE = 36;
+    static final int UPDATED_BIT_OFFSET = 42;
+    static final int UPDATED_BIT_SIZE = 36;
+    static final int CMP_ID_OFFSET = 78;
+    static final int CMP_ID_SIZE = 12;
+    static final int CMP_VERSION_OFFSET = 90;
+    static final int CMP_VERSION_SIZE = 12;
+    static final int CONSENT_SCREEN_SIZE_OFFSET = 102;
+    static final int CONSENT_SCREEN_SIZE = 6;
+    static final int CONSENT_LANGUAGE_OFFSET = 108;
+    static final int CONSENT_LANGUAGE_SIZE = 12;
+    static final int VENDOR_LIST_VERSION_OFFSET = 120;
+    static final int VENDOR_LIST_VERSION_SIZE = 12;
+    static final int PURPOSES_OFFSET = 132;
+    static final int PURPOSES_SIZE = 24;
+    static final int MAX_VENDOR_ID_OFFSET = 156;
+    static final int MAX_VENDOR_ID_SIZE = 16;
+    static final int ENCODING_TYPE_OFFSET = 172;
+    static final int ENCODING_TYPE_SIZE = 1;
+    static final int VENDOR_BITFIELD_OFFSET = 173;
+    static final int DEFAULT_CONSENT_OFFSET = 173;
+    static final int NUM_ENTRIES_OFFSET = 174;
+    static final int NUM_ENTRIES_SIZE = 12;
+    static final int RANGE_ENTRY_OFFSET = 186;
+    static final int VENDOR_ID_SIZE = 16;
 
     private String consentString;
-    private Bits bits;
     // fields contained in the rangeConsent string
     private int version;
     private long consentRecordCreated;
@@ -64,13 +61,25 @@ class ConsentStringParser {
     private  int vendorListVersion;
     private int maxVendorId;
     private int vendorEncodingType;
-    private final List<Boolean> allowedPurposes = new ArrayList<>();
-    private final List<Boolean> allowedVendors = new ArrayList<>();
-    // only used when range entry is enabled
-    private List<RangeEntry> rangeEntries;
+    // bit purposeId - 1 is set when the purpose is allowed, see PurposeSet
+    private int purposeMask;
+    // vendor consent of a bitfield string, or of a range string once normalized
+    private VendorBitmap vendorBitmap;
+    // only used when range entry is enabled: sorted, non overlapping [start, end] intervals
+    private int[] rangeStarts;
+    private int[] rangeEnds;
+    private int rangeCount;
     private boolean defaultConsent;
-
-    private List<Integer> integerPurposes = null;
+    // the decoded string this parser was created from, decodedLength bytes at decodedOffset;
+    // while purposes and vendors keep their parsed consent, encoding only patches its header
+    private byte[] decodedBytes;
+    private int decodedOffset;
+    private int decodedLength;
+    private boolean consentChanged;
+    // kept across reset calls
+    private BitReader reader;
+    private VendorBitmap spareBitmap;
+    private byte[] scratch;
 
     /**
      * Constructor.
@@ -82,7 +91,7 @@ class ConsentStringParser {
      *             if the rangeConsent string cannot be parsed
      */
     public ConsentStringParser(String consentString) throws ParseException, Base64DecoderException {
-        this(Base64.decodeWebSafe(consentString.getBytes()));
+        this(Base64.decodeWebSafe(consentString));
         this.consentString = consentString;
     }
 
@@ -95,7 +104,88 @@ class ConsentStringParser {
      *             when the rangeConsent string cannot be parsed
      */
     public ConsentStringParser(byte[] bytes) throws ParseException {
-        this.bits = new Bits(bytes);
+        this(bytes, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param bytes:
+     *            the byte string encoding the user rangeConsent data, not copied and so not to
+     *            be modified while the parser is in use
+     * @param normalizeVendors:
+     *            if true, range encoded vendor consent is expanded into a bitmap right away,
+     *            see {@link #normalizeVendors()}
+     * @throws ParseException
+     *             when the rangeConsent string cannot be parsed
+     */
+    public ConsentStringParser(byte[] bytes, boolean normalizeVendors) throws ParseException {
+        this(bytes, 0, bytes.length);
+        if (normalizeVendors) {
+            normalizeVendors();
+        }
+    }
+
+    /**
+     * Constructor for the consent string held in len bytes of bytes starting at off, which are
+     * not copied.
+     *
+     * @throws ParseException
+     *             when the rangeConsent string cannot be parsed
+     */
+    public ConsentStringParser(byte[] bytes, int off, int len) throws ParseException {
+        reset(bytes, off, len);
+    }
+
+    /**
+     * Re-points this parser at another consent string, len bytes of src starting at off, as if
+     * it had been created from it.  Buffers of the previous string are kept for reuse, so a loop
+     * resetting one parser creates next to no garbage.  Bitmaps obtained from the parser before,
+     * e.g. by {@link #normalizedVendors()}, may be overwritten.
+     *
+     * @param src not copied and so not to be modified while the parser is in use
+     * @throws ParseException when the consent string cannot be parsed; the parser must then be
+     *             reset again before it is used
+     */
+    public void reset(byte[] src, int off, int len) throws ParseException {
+        if (reader == null) {
+            reader = new BitReader(src, off, len);
+        } else {
+            reader.reset(src, off, len);
+        }
+        consentString = null;
+        decodedBytes = null;
+        consentChanged = false;
+        defaultConsent = false;
+        rangeCount = 0;
+        if (vendorBitmap != null) {
+            spareBitmap = vendorBitmap;
+            vendorBitmap = null;
+        }
+        parse(reader);
+        decodedBytes = src;
+        decodedOffset = off;
+        decodedLength = len;
+    }
+
+    /**
+     * Variant of {@link #reset(byte[], int, int)} for a url and filename safe base64 string,
+     * which is decoded into a buffer owned by the parser.  {@link #getConsentString()} returns
+     * the string only if it is a String.
+     */
+    public void reset(CharSequence consentString) throws ParseException, Base64DecoderException {
+        int max = Base64.maxDecodedLength(consentString.length());
+        if (scratch == null || scratch.length < max) {
+            scratch = new byte[Math.max(max, 64)];
+        }
+        int length = Base64.decodeWebSafe(consentString, 0, consentString.length(), scratch, 0);
+        reset(scratch, 0, length);
+        if (consentString instanceof String) {
+            this.consentString = (String) consentString;
+        }
+    }
+
+    private void parse(BitReader bits) throws ParseException {
         // begin parsing
 
         this.version = bits.getInt(VERSION_BIT_OFFSET, VERSION_BIT_SIZE);
@@ -104,17 +194,16 @@ class ConsentStringParser {
         this.cmpID = bits.getInt(CMP_ID_OFFSET, CMP_ID_SIZE);
         this.cmpVersion = bits.getInt(CMP_VERSION_OFFSET, CMP_VERSION_SIZE);
         this.consentScreenID = bits.getInt(CONSENT_SCREEN_SIZE_OFFSET, CONSENT_SCREEN_SIZE);
-        this.consentLanguage = bits.getSixBitString(CONSENT_LANGUAGE_OFFSET, CONSENT_LANGUAGE_SIZE);
+        this.consentLanguage = ConsentString.languageOf(bits.getInt(CONSENT_LANGUAGE_OFFSET, CONSENT_LANGUAGE_SIZE));
         this.vendorListVersion = bits.getInt(VENDOR_LIST_VERSION_OFFSET, VENDOR_LIST_VERSION_SIZE);
         this.maxVendorId = bits.getInt(MAX_VENDOR_ID_OFFSET, MAX_VENDOR_ID_SIZE);
         this.vendorEncodingType = bits.getInt(ENCODING_TYPE_OFFSET, ENCODING_TYPE_SIZE);
-        for (int i = PURPOSES_OFFSET, ii = PURPOSES_OFFSET + PURPOSES_SIZE; i < ii; i++) {
-            allowedPurposes.add(bits.getBit(i));
-        }
+        // the string holds purpose 1 in the most significant bit of the field
+        this.purposeMask = Integer.reverse(bits.getInt(PURPOSES_OFFSET, PURPOSES_SIZE)) >>> (Integer.SIZE - PURPOSES_SIZE);
         if (vendorEncodingType == VENDOR_ENCODING_RANGE) {
-            this.rangeEntries = new ArrayList<>();
             this.defaultConsent = bits.getBit(DEFAULT_CONSENT_OFFSET);
             int numEntries = bits.getInt(NUM_ENTRIES_OFFSET, NUM_ENTRIES_SIZE);
+            ensureRangeCapacity(numEntries);
             int currentOffset = RANGE_ENTRY_OFFSET;
             for (int i = 0; i < numEntries; i++) {
                 boolean range = bits.getBit(currentOffset);
@@ -124,17 +213,41 @@ class ConsentStringParser {
                     currentOffset += VENDOR_ID_SIZE;
                     int endVendorId = bits.getInt(currentOffset, VENDOR_ID_SIZE);
                     currentOffset += VENDOR_ID_SIZE;
-                    rangeEntries.add(new RangeEntry(startVendorId, endVendorId));
+                    insertRange(startVendorId, endVendorId);
                 } else {
                     int vendorId = bits.getInt(currentOffset, VENDOR_ID_SIZE);
                     currentOffset += VENDOR_ID_SIZE;
-                    rangeEntries.add(new RangeEntry(vendorId));
+                    insertRange(vendorId, vendorId);
                 }
             }
         } else {
-            for (int i = VENDOR_BITFIELD_OFFSET, ii = VENDOR_BITFIELD_OFFSET + maxVendorId; i < ii; i++) {
-                allowedVendors.add(bits.getBit(i));
-            }
+            bits.checkRange(VENDOR_BITFIELD_OFFSET, maxVendorId);
+            this.vendorBitmap = VendorBitmap.fromBitfield(bits, VENDOR_BITFIELD_OFFSET, maxVendorId, spareBitmap);
+            spareBitmap = null;
+        }
+    }
+
+    /**
+     * Expands range encoded vendor consent into a bitmap indexed by vendor id, with the default
+     * consent already applied, so that every later {@link #isVendorAllowed(int)} is a single word
+     * load and mask instead of a search of the range entries.  Bitfield encoded consent is always
+     * held in this form.  The bitmap takes maxVendorId / 8 bytes.
+     */
+    public void normalizeVendors() {
+        if (vendorEncodingType == VENDOR_ENCODING_RANGE && vendorBitmap == null) {
+            vendorBitmap = VendorBitmap.fromRanges(rangeStarts, rangeEnds, rangeCount, maxVendorId, defaultConsent,
+                    spareBitmap);
+            spareBitmap = null;
+        }
+    }
+
+    /**
+     * Drops a bitmap derived from the range entries after they have been changed.
+     */
+    private void rangesChanged() {
+        consentChanged = true;
+        if (vendorEncodingType == VENDOR_ENCODING_RANGE) {
+            vendorBitmap = null;
         }
     }
 
@@ -217,20 +330,25 @@ class ConsentStringParser {
 
     /**
      *
-     * @return a list of purpose id's which are permitted according to this rangeConsent string
+     * @return an unmodifiable list of purpose id's which are permitted according to this rangeConsent string
      */
     public List<Integer> getAllowedPurposes() {
-        if (integerPurposes != null) {
-            return integerPurposes;
-        }
-        List<Integer> purposes = new ArrayList<Integer>();
-        for (int i = 1, ii = allowedPurposes.size(); i <= ii; i++) {
-            if (isPurposeAllowed(i)) {
-                purposes.add(i);
-            }
-        }
-        integerPurposes = purposes;
-        return purposes;
+        return PurposeSet.toList(purposeMask);
+    }
+
+    /**
+     * @return the allowed purposes as a mask where bit purposeId - 1 is set when the purpose is allowed
+     */
+    public int getPurposeMask() {
+        return purposeMask;
+    }
+
+    /**
+     * @param requiredMask the purposes needed, e.g. {@code PurposeSet.of(1, 3, 5)}
+     * @return whether the user consented to every purpose of requiredMask
+     */
+    public boolean arePurposesAllowed(int requiredMask) {
+        return (purposeMask & requiredMask) == requiredMask;
     }
 
     /**
@@ -249,35 +367,77 @@ class ConsentStringParser {
      * @return a boolean describing the user rangeConsent status for a particular purpose. The lowest purpose ID is 1.
      */
     public boolean isPurposeAllowed(int purposeId) {
-        if (purposeId < 1 || purposeId > allowedPurposes.size()) {
-            return false;
-        }
-        return allowedPurposes.get(purposeId - 1);
+        return PurposeSet.contains(purposeMask, purposeId);
     }
 
     private boolean findVendorIdInRange(int vendorId) {
-        int limit = rangeEntries.size();
-        if (limit == 0) {
-            return false;
-        }
-        int index = limit / 2;
-        while (index >= 0 && index < limit) {
-            RangeEntry entry = rangeEntries.get(index);
-            if (entry.containsVendorId(vendorId)) {
-                return true;
-            }
-            if (index == 0 || index == limit - 1) {
-                return false;
-            }
-            if (entry.idIsGreaterThanMax(vendorId)) {
-                index = (index + ((limit - index) / 2));
+        int low = 0;
+        int high = rangeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (vendorId < rangeStarts[mid]) {
+                high = mid - 1;
+            } else if (vendorId > rangeEnds[mid]) {
+                low = mid + 1;
             } else {
-                index = index / 2;
+                return true;
             }
         }
         return false;
     }
 
+    private void ensureRangeCapacity(int capacity) {
+        if (rangeStarts == null) {
+            rangeStarts = new int[Math.max(capacity, 4)];
+            rangeEnds = new int[rangeStarts.length];
+        } else if (rangeStarts.length < capacity) {
+            int newCapacity = Math.max(capacity, rangeStarts.length * 2);
+            int[] starts = new int[newCapacity];
+            int[] ends = new int[newCapacity];
+            System.arraycopy(rangeStarts, 0, starts, 0, rangeCount);
+            System.arraycopy(rangeEnds, 0, ends, 0, rangeCount);
+            rangeStarts = starts;
+            rangeEnds = ends;
+        }
+    }
+
+    /**
+     * Adds the interval [start, end] keeping the entries sorted by start id.  Intervals that
+     * overlap an existing entry are merged into it, so that a lookup is a plain binary search.
+     * Entries arrive in ascending order in practice, which makes this an append.
+     */
+    private void insertRange(int start, int end) {
+        if (end < start) {
+            return;
+        }
+        ensureRangeCapacity(rangeCount + 1);
+        int i = rangeCount;
+        while (i > 0 && rangeStarts[i - 1] > start) {
+            i--;
+        }
+        if (i > 0 && rangeEnds[i - 1] >= start) {
+            i--;
+            start = rangeStarts[i];
+            end = Math.max(end, rangeEnds[i]);
+        } else {
+            System.arraycopy(rangeStarts, i, rangeStarts, i + 1, rangeCount - i);
+            System.arraycopy(rangeEnds, i, rangeEnds, i + 1, rangeCount - i);
+            rangeCount++;
+        }
+        int j = i + 1;
+        while (j < rangeCount && rangeStarts[j] <= end) {
+            end = Math.max(end, rangeEnds[j]);
+            j++;
+        }
+        rangeStarts[i] = start;
+        rangeEnds[i] = end;
+        if (j > i + 1) {
+            System.arraycopy(rangeStarts, j, rangeStarts, i + 1, rangeCount - j);
+            System.arraycopy(rangeEnds, j, rangeEnds, i + 1, rangeCount - j);
+            rangeCount -= j - i - 1;
+        }
+    }
+
     /**
      * @return a boolean describing if end-user has consented to a particular vendor. The lowest vendor ID is 1.
      *
@@ -285,12 +445,78 @@ class ConsentStringParser {
      *         by a given vendor.
      */
     public boolean isVendorAllowed(int vendorId) {
+        if (vendorBitmap != null && vendorId >= 1 && vendorId <= vendorBitmap.getMaxVendorId()) {
+            return vendorBitmap.get(vendorId);
+        }
         if (vendorEncodingType == VENDOR_ENCODING_RANGE) {
             boolean present = findVendorIdInRange(vendorId);
             return present != defaultConsent;
-        } else {
-            return bits.getBit(VENDOR_BITFIELD_OFFSET + vendorId - 1);
         }
+        return false;
+    }
+
+    /**
+     * Resolves the consent of many vendors in one pass, storing whether vendorIds[i] is allowed in
+     * result[i].  Range encoded consent is normalized first, see {@link #normalizeVendors()}.
+     *
+     * @param vendorIds the vendors to look up
+     * @param result receives the consent of each vendor, at least as long as vendorIds
+     */
+    public void areVendorsAllowed(int[] vendorIds, boolean[] result) {
+        normalizeVendors();
+        normalizedVendors().get(vendorIds, result, isAllowedOutsideOfBitmap());
+    }
+
+    /**
+     * Resolves the consent of many vendors in one pass, setting bit i of result, that is bit
+     * i % 64 of result[i / 64], if vendorIds[i] is allowed.
+     *
+     * @param vendorIds the vendors to look up
+     * @param result receives the packed consent, at least (vendorIds.length + 63) / 64 words long
+     */
+    public void areVendorsAllowed(int[] vendorIds, long[] result) {
+        normalizeVendors();
+        normalizedVendors().get(vendorIds, result, isAllowedOutsideOfBitmap());
+    }
+
+    /**
+     * @return the vendors of the given bitmap the user has consented to, computed a word at a time
+     */
+    public VendorBitmap intersectAllowedVendors(VendorBitmap vendors) {
+        normalizeVendors();
+        return normalizedVendors().and(vendors, isAllowedOutsideOfBitmap());
+    }
+
+    /**
+     * Cursor over the allowed vendors that does not allocate:
+     * <pre>
+     * for (int id = parser.nextAllowedVendor(1); id != -1; id = parser.nextAllowedVendor(id + 1))
+     * </pre>
+     * For range encoding only vendors up to the highest of maxVendorId and the range entries are
+     * visited, even when the default consent also allows the vendors above.
+     *
+     * @return the lowest allowed vendor id of at least from, or -1 if there is none
+     */
+    public int nextAllowedVendor(int from) {
+        normalizeVendors();
+        return normalizedVendors().nextSetBit(from);
+    }
+
+    /**
+     * @return the number of vendors {@link #nextAllowedVendor(int)} visits, counted a word at a time
+     */
+    public int allowedVendorCount() {
+        normalizeVendors();
+        return normalizedVendors().cardinality();
+    }
+
+    VendorBitmap normalizedVendors() {
+        return vendorBitmap != null ? vendorBitmap : new VendorBitmap(0);
+    }
+
+    // once normalized, the bitmap covers all range entries and vendors past it get the default
+    boolean isAllowedOutsideOfBitmap() {
+        return vendorEncodingType == VENDOR_ENCODING_RANGE && defaultConsent;
     }
 
     // static classes
@@ -298,25 +524,20 @@ class ConsentStringParser {
         /**
          * This class corresponds to the RangeEntry field given in the rangeConsent string specification.
          */
-        private final List<Integer> vendorIds = new ArrayList<Integer>();
         private final int maxVendorId;
         private final int minVendorId;
 
         public RangeEntry(int vendorId) {
-            vendorIds.add(vendorId);
             this.maxVendorId = this.minVendorId = vendorId;
         }
 
         public RangeEntry(int startId, int endId) {
             this.maxVendorId = endId;
             this.minVendorId = startId;
-            for (; startId <= endId; startId++) {
-                vendorIds.add(startId);
-            }
         }
 
         public boolean containsVendorId(int vendorId) {
-            return vendorIds.indexOf(vendorId) >= 0;
+            return vendorId >= minVendorId && vendorId <= maxVendorId;
         }
 
         public boolean idIsGreaterThanMax(int vendorId) {
@@ -336,217 +557,6 @@ class ConsentStringParser {
         }
     }
 
-    // since java.util.BitSet is inappropriate to use here--as it reversed the bit order of the rangeConsent string--we
-    // implement our own bitwise operations here.
-    private static class Bits {
-        // big endian
-        private static final byte[] bytePows = { -128, 64, 32, 16, 8, 4, 2, 1 };
-        private final byte[] bytes;
-
-        public Bits(byte[] b) {
-            this.bytes = b;
-        }
-
-        /**
-         *
-         * @param index:
-         *            the nth number bit to get from the bit string
-         * @return boolean bit, true if the bit is switched to 1, false otherwise
-         */
-        public boolean getBit(int index) {
-            int byteIndex = index / 8;
-            int bitExact = index % 8;
-            byte b = bytes[byteIndex];
-            return (b & bytePows[bitExact]) != 0;
-        }
-
-        /**
-         * interprets n number of bits as a big endian int
-         *
-         * @param startInclusive:
-         *            the nth to begin interpreting from
-         * @param size:
-         *            the number of bits to interpret
-         * @return
-         * @throws ParseException
-         *             when the bits cannot fit in an int sized field
-         */
-        public int getInt(int startInclusive, int size) throws ParseException {
-            if (size > Integer.SIZE) {
-                throw new ParseException("can't fit bit range in int.", startInclusive);
-            }
-            int val = 0;
-            int sigMask = 1;
-            int sigIndex = size - 1;
-
-            for (int i = 0; i < size; i++) {
-                if (getBit(startInclusive + i)) {
-                    val += (sigMask << sigIndex);
-                }
-                sigIndex--;
-            }
-            return val;
-        }
-
-        /**
-         * interprets n bits as a big endian long
-         *
-         * @param startInclusive:
-         *            the nth to begin interpreting from
-         * @param size:the
-         *            number of bits to interpret
-         * @return
-         * @throws ParseException
-         *             when the bits cannot fit in an int sized field
-         */
-        public long getLong(int startInclusive, int size) throws ParseException {
-            if (size > Long.SIZE) {
-                throw new ParseException("can't fit bit range in long.", startInclusive);
-            }
-            long val = 0;
-            long sigMask = 1;
-            int sigIndex = size - 1;
-
-            for (int i = 0; i < size; i++) {
-                if (getBit(startInclusive + i)) {
-                    val += (sigMask << sigIndex);
-                }
-                sigIndex--;
-            }
-            return val;
-        }
-
-        /**
-         * returns an {@link Instant} derived from interpreting the given interval on the bit string as long
-         * representing the number of demiseconds from the unix epoch
-         *
-         * @param startInclusive:
-         *            the bit from which to begin interpreting
-         * @param size:
-         *            the number of bits to interpret
-         * @return
-         * @throws ParseException
-         *             when the number of bits requested cannot fit in a long
-         */
-        public long getInstantFromEpochDemiseconds(int startInclusive, int size) throws ParseException {
-            long epochDemi = getLong(startInclusive, size);
-            //return Instant.ofEpochMilli(epochDemi * 100);
-            return epochDemi * 100;
-        }
-
-        /**
-         * @return the number of bits in the bit string
-         *
-         */
-        public int length() {
-            return bytes.length * 8;
-        }
-
-        /**
-         * This method interprets the given interval in the bit string as a series of six bit characters, where 0=A and
-         * 26=Z
-         *
-         * @param startInclusive:
-         *            the nth bit in the bitstring from which to start the interpretation
-         * @param size:
-         *            the number of bits to include in the string
-         * @return the string given by the above interpretation
-         * @throws ParseException
-         *             when the requested interval is not a multiple of six
-         */
-        public String getSixBitString(int startInclusive, int size) throws ParseException {
-            if (size % 6 != 0) {
-                throw new ParseException("string bit length must be multiple of six", startInclusive);
-            }
-            int charNum = size / 6;
-            StringBuilder val = new StringBuilder();
-            for (int i = 0; i < charNum; i++) {
-                int charCode = getInt(startInclusive + (i * 6), 6) + 65;
-                val.append((char) charCode);
-            }
-            return val.toString().toUpperCase();
-
-        }
-
-        /**
-         *
-         * @return a string representation of the byte array passed in the constructor. for example, a byte array of [4]
-         *         yields a String of "0100"
-         */
-        public String getBinaryString() {
-            StringBuilder s = new StringBuilder();
-            int i = 0;
-            int ii = length();
-            for (; i < ii; i++) {
-                if (getBit(i)) {
-                    s.append("1");
-                } else {
-                    s.append("0");
-                }
-            }
-            return s.toString();
-        }
-    }
-
-    /**
-     *
-     * BEGIN WRITING TO CONSENT STRING
-     */
-    String encodeIntToBits(long number, int numBits) {
-
-        String bitString = "";
-        bitString = Long.toString(Long.parseLong(number+"", 10),2);
-
-        // Pad the string if not filling all bits
-        if (numBits >= bitString.length()) {
-            bitString = padLeft(bitString, numBits - bitString.length());
-        }
-
-        // Truncate the string if longer than the number of bits
-        if (bitString.length() > numBits) {
-            bitString = bitString.substring(0, numBits);
-        }
-
-        return bitString;
-    }
-
-    String repeat(int count) {
-        String padString = "";
-        for (int i=0;i < count;i++) {
-            padString += "0";
-        }
-        return padString;
-    }
-
-    String padLeft(String string, int padding) {
-        if (padding <= 0)
-            return string;
-        return repeat(Math.max(0, padding)) + string;
-    }
-
-    String padRight(String string, int padding) {
-        if (padding <= 0)
-            return string;
-        return string + repeat(Math.max(0, padding));
-    }
-
-    String encodeLetterToBits(Character letter, int numBits) {
-        return encodeIntToBits(Character.toUpperCase(letter) - 65, numBits);
-    }
-
-    String encodeLanguageToBits(String language, int numBits) {
-        return encodeLetterToBits(Character.valueOf(language.charAt(0)), numBits/2)
-                + encodeLetterToBits(Character.valueOf(language.charAt(1)), numBits / 2);
-    }
-
-    String encodePurposesToBits() {
-        StringBuilder purposesBits = new StringBuilder(PURPOSES_SIZE); //24
-        for (int i=0; i < PURPOSES_SIZE;i++) {
-            purposesBits.append(isPurposeAllowed(i+1) ? '1' : '0');
-        }
-        return purposesBits.toString();
-    }
-
     public ConsentStringParser(int version, long createdDate, long updatedDate, int cmpId,
                                int cmpVersion, int cmpScreenNumber, String language2DigitCode,
                                int vendorListVersion) {
@@ -566,49 +576,96 @@ class ConsentStringParser {
      * https://github.com/InteractiveAdvertisingBureau/GDPR-Transparency-and-Consent-Framework/blob/master/Consent%20string%20and%20vendor%20list%20formats%20v1.1%20Final.md
      */
     public String getEncodedConsentString() throws Exception {
-
-        String bitString = encodeIntToBits(version, VERSION_BIT_SIZE); //Incremented when rangeConsent string format changes
-        bitString += encodeIntToBits(this.consentRecordCreated / 100, CREATED_BIT_SIZE); //created
-        bitString += encodeIntToBits(this.consentRecordLastUpdated / 100, UPDATED_BIT_SIZE); //last updated
-        bitString += encodeIntToBits(cmpID, CMP_ID_SIZE); //cmpID
-        bitString += encodeIntToBits(cmpVersion, CMP_VERSION_SIZE); //cmpVersion
-        bitString += encodeIntToBits(consentScreenID, CONSENT_SCREEN_SIZE); //screen number in CMP where rangeConsent given
-        bitString += encodeLanguageToBits(consentLanguage, CONSENT_LANGUAGE_SIZE); //2-digit language code CMP asked for content in
-        bitString += encodeIntToBits(vendorListVersion, VENDOR_LIST_VERSION_SIZE); //vendor list version used in most recent rangeConsent string update
-        bitString += encodePurposesToBits();  //24 purposes
-        bitString += encodeIntToBits(maxVendorId, MAX_VENDOR_ID_SIZE); //max vendor id
-        bitString += encodeIntToBits(vendorEncodingType, ENCODING_TYPE_SIZE);
+        if (decodedBytes != null && !consentChanged) {
+            // only header fields can differ from the parsed string
+            byte[] bytes = Arrays.copyOfRange(decodedBytes, decodedOffset, decodedOffset + decodedLength);
+            writeHeader(new BitWriter(bytes));
+            return Base64.encodeWebSafe(bytes, true);
+        }
+        BitWriter bits = new BitWriter(encodedBitLength());
+        writeHeader(bits);
+        //24 purposes, purpose 1 first
+        bits.writeInt(Integer.reverse(purposeMask) >>> (Integer.SIZE - PURPOSES_SIZE), PURPOSES_SIZE);
+        bits.writeInt(maxVendorId, MAX_VENDOR_ID_SIZE); //max vendor id
+        bits.writeInt(vendorEncodingType, ENCODING_TYPE_SIZE);
         if (vendorEncodingType == VENDOR_ENCODING_RANGE) {
-            bitString += defaultConsent ? "1" : "0";
-            bitString += encodeIntToBits(rangeEntries.size(), NUM_ENTRIES_SIZE);
-            for (int i=0;i < rangeEntries.size();i++) {
-                RangeEntry rangeEntry = rangeEntries.get(i);
-                if (rangeEntry.vendorIds.size() == 1) {
-                    bitString += "0"; //single vendor id
-                    bitString += encodeIntToBits(rangeEntry.vendorIds.get(0), VENDOR_ID_SIZE); //single vendor id
+            bits.writeBit(defaultConsent);
+            bits.writeInt(rangeCount, NUM_ENTRIES_SIZE);
+            for (int i=0;i < rangeCount;i++) {
+                if (rangeStarts[i] == rangeEnds[i]) {
+                    bits.writeBit(false); //single vendor id
+                    bits.writeInt(rangeStarts[i], VENDOR_ID_SIZE); //single vendor id
                 } else {
-                    bitString += "1";  //vendor id range
-                    bitString += encodeIntToBits(rangeEntry.minVendorId, VENDOR_ID_SIZE);  //start vendor id
-                    bitString += encodeIntToBits(rangeEntry.maxVendorId, VENDOR_ID_SIZE);  //end vendor id
+                    bits.writeBit(true);  //vendor id range
+                    bits.writeInt(rangeStarts[i], VENDOR_ID_SIZE);  //start vendor id
+                    bits.writeInt(rangeEnds[i], VENDOR_ID_SIZE);  //end vendor id
                 }
             }
         } else {
-            for (int i=0; i < allowedVendors.size();i++) {
-                bitString += allowedVendors.get(i) ? "1" : "0";
-            }
+            normalizedVendors().writeBitfield(bits, maxVendorId);
         }
+        return Base64.encodeWebSafe(bits.toByteArray(), true);
+    }
 
-        String paddedBinaryValue = padRight(bitString, 7 - ((bitString.length() + 7) % 8));
-        List<Byte> list = new ArrayList<>();
-        for (int i=0; i < paddedBinaryValue.length(); i += 8) {
-            byte b = (byte)Character.toChars(Integer.parseInt(paddedBinaryValue.substring(i, i+8), 2))[0];
-            list.add(b);
-        }
-        byte bytes[] = new byte[list.size()];
-        for (int i=0;i < list.size();i++) {
-            bytes[i] = list.get(i);
+    /**
+     * Writes the fields ahead of the purposes, which all have a fixed size.
+     */
+    private void writeHeader(BitWriter bits) {
+        writeHeader(bits, version, consentRecordCreated, consentRecordLastUpdated, cmpID, cmpVersion,
+                consentScreenID, consentLanguage, vendorListVersion);
+    }
+
+    static void writeHeader(BitWriter bits, int version, long consentRecordCreated, long consentRecordLastUpdated,
+                            int cmpId, int cmpVersion, int consentScreen, String consentLanguage,
+                            int vendorListVersion) {
+        bits.writeInt(version, VERSION_BIT_SIZE); //Incremented when rangeConsent string format changes
+        bits.writeLong(consentRecordCreated / 100, CREATED_BIT_SIZE); //created
+        bits.writeLong(consentRecordLastUpdated / 100, UPDATED_BIT_SIZE); //last updated
+        bits.writeInt(cmpId, CMP_ID_SIZE); //cmpID
+        bits.writeInt(cmpVersion, CMP_VERSION_SIZE); //cmpVersion
+        bits.writeInt(consentScreen, CONSENT_SCREEN_SIZE); //screen number in CMP where rangeConsent given
+        //2-digit language code CMP asked for content in, 6 bits per letter
+        bits.writeInt(Character.toUpperCase(consentLanguage.charAt(0)) - 'A', CONSENT_LANGUAGE_SIZE / 2);
+        bits.writeInt(Character.toUpperCase(consentLanguage.charAt(1)) - 'A', CONSENT_LANGUAGE_SIZE / 2);
+        bits.writeInt(vendorListVersion, VENDOR_LIST_VERSION_SIZE); //vendor list version used in most recent rangeConsent string update
+    }
+
+    /**
+     * Rewrites the header fields a CMP updates on every save, in place, leaving all other bits of
+     * the decoded consent string untouched.  This spares decoding and encoding purposes and
+     * vendors when migrating stored strings in bulk.
+     *
+     * @param bytes the decoded consent string
+     * @throws ParseException if the bytes are too short to hold the header
+     */
+    static void patchHeader(byte[] bytes, int version, long consentRecordLastUpdated, int cmpVersion,
+                            int consentScreen, int vendorListVersion) throws ParseException {
+        new BitReader(bytes).checkRange(0, PURPOSES_OFFSET);
+        BitWriter bits = new BitWriter(bytes);
+        bits.writeInt(version, VERSION_BIT_SIZE);
+        bits.position(UPDATED_BIT_OFFSET);
+        bits.writeLong(consentRecordLastUpdated / 100, UPDATED_BIT_SIZE);
+        bits.position(CMP_VERSION_OFFSET);
+        bits.writeInt(cmpVersion, CMP_VERSION_SIZE);
+        bits.writeInt(consentScreen, CONSENT_SCREEN_SIZE);
+        bits.position(VENDOR_LIST_VERSION_OFFSET);
+        bits.writeInt(vendorListVersion, VENDOR_LIST_VERSION_SIZE);
+    }
+
+    /**
+     * @return the number of bits {@link #getEncodedConsentString()} writes, before padding
+     */
+    private int encodedBitLength() {
+        int length = ENCODING_TYPE_OFFSET + ENCODING_TYPE_SIZE;
+        if (vendorEncodingType == VENDOR_ENCODING_RANGE) {
+            length += RANGE_ENTRY_OFFSET - DEFAULT_CONSENT_OFFSET;
+            for (int i=0;i < rangeCount;i++) {
+                length += rangeStarts[i] == rangeEnds[i] ? 1 + VENDOR_ID_SIZE : 1 + 2 * VENDOR_ID_SIZE;
+            }
+        } else {
+            length += Math.max(maxVendorId, 0);
         }
-        return Base64.encodeWebSafe(bytes, true);
+        return length;
     }
 
     public int getVendorEncodingType() {
@@ -620,84 +677,138 @@ class ConsentStringParser {
      * @param vendorEncodingType 1 = range, 0: bitfield
      */
     public void setVendorEncodingType(int vendorEncodingType) {
+        if (vendorEncodingType == VENDOR_ENCODING_RANGE && this.vendorEncodingType != VENDOR_ENCODING_RANGE) {
+            // the bitfield does not describe the range entries to come, whereas a
+            // normalized range bitmap stays valid as a bitfield
+            vendorBitmap = null;
+        }
+        if (vendorEncodingType != this.vendorEncodingType) {
+            consentChanged = true;
+        }
         this.vendorEncodingType = vendorEncodingType;
     }
 
     public void addRangeEntry(RangeEntry rangeEntry) {
-        if (rangeEntries == null) {
-            rangeEntries = new ArrayList<>();
-        }
-        rangeEntries.add(rangeEntry);
+        insertRange(rangeEntry.getMinVendorId(), rangeEntry.getMaxVendorId());
+        rangesChanged();
     }
 
+    /**
+     * @return the range entries sorted by vendor id with overlapping entries merged, or null if
+     * no range entries were parsed or added
+     */
     public List<RangeEntry> getRangeEntries() {
-        return rangeEntries;
+        if (rangeStarts == null) {
+            return null;
+        }
+        List<RangeEntry> entries = new ArrayList<>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            entries.add(new RangeEntry(rangeStarts[i], rangeEnds[i]));
+        }
+        return entries;
     }
 
     public void setVendors(List<GdprVendor> vendors) {
-        if (allowedVendors != null) {
-            allowedVendors.clear();
-        }
-        Map<Integer, Boolean> map = new HashMap<>();
-        for (GdprVendor vendor : vendors) {
-            map.put(vendor.getId(), vendor.isAllowed());
-        }
         maxVendorId = vendors.get(vendors.size()-1).getId();
-        for (int i=0;i<maxVendorId;i++) {
-            allowedVendors.add( map.containsKey(i+1) ? map.get(i+1) : false);
+        VendorBitmap bitmap = new VendorBitmap(maxVendorId);
+        for (int i=0;i<vendors.size();i++) {
+            GdprVendor vendor = vendors.get(i);
+            if (vendor.isAllowed() && vendor.getId() >= 1 && vendor.getId() <= maxVendorId) {
+                bitmap.set(vendor.getId(), true);
+            }
         }
+        vendorBitmap = bitmap;
+        consentChanged = true;
     }
 
     public void setPurposes(List<GdprPurpose> purposes) {
-        if (allowedPurposes != null) {
-            allowedPurposes.clear();
+        int mask = 0;
+        for (int i=0;i < purposes.size() && i < PURPOSES_SIZE;i++) {
+            if (purposes.get(i).isAllowed()) {
+                mask |= 1 << i;
+            }
         }
-        for (int i=0;i < purposes.size();i++) {
-            allowedPurposes.add(purposes.get(i).isAllowed());
+        setPurposeMask(mask);
+    }
+
+    private void setPurposeMask(int purposeMask) {
+        if (purposeMask != this.purposeMask) {
+            this.purposeMask = purposeMask;
+            consentChanged = true;
         }
     }
 
     public void bitwiseConsent(GdprData data) {
+        boolean changed = consentChanged;
+        int purposesBefore = purposeMask;
+        normalizeVendors();
+        VendorBitmap vendorsBefore = normalizedVendors();
+        boolean outsideBefore = isAllowedOutsideOfBitmap();
+
         setVendorEncodingType(0);
-        allowedPurposes.clear();
-        allowedVendors.clear();
         setVendors(data.getVendors());
         setPurposes(data.getPurposes());
+        optimizeVendorEncoding();
+        consentChanged = changed || !isSameConsent(purposesBefore, vendorsBefore, outsideBefore);
+    }
 
-        //HOWEVER, if all the vendors are all consent or all no consent
-        //we should do the more optimized ranged approach
-        if (vendorsAreAll(data.getVendors(),true)) {
-            rangeConsent(maxVendorId, true, false);
-        } else if (vendorsAreAll(data.getVendors(),false)) {
-            rangeConsent(maxVendorId, false, true);
-        }
+    /**
+     * @return whether purposes and vendors still have the given consent, however they are encoded
+     */
+    private boolean isSameConsent(int purposesBefore, VendorBitmap vendorsBefore, boolean outsideBefore) {
+        normalizeVendors();
+        return purposeMask == purposesBefore
+                && vendorsBefore.sameVendors(outsideBefore, normalizedVendors(), isAllowedOutsideOfBitmap());
     }
 
-    private boolean vendorsAreAll(List<GdprVendor> vendors, boolean isAllowed) {
-        for (int i=0;i<vendors.size();i++) {
-            if (vendors.get(i).isAllowed() != isAllowed) {
-                return false;
-            }
+    /**
+     * Switches the vendors set by {@link #setVendors(List)} to whichever encoding is shortest,
+     * see {@link VendorEncoding}.
+     */
+    void optimizeVendorEncoding() {
+        VendorBitmap vendors = normalizedVendors();
+        VendorEncoding encoding = VendorEncoding.shortest(vendors, maxVendorId);
+        consentChanged = true;
+        setVendorEncodingType(encoding.encodingType);
+        maxVendorId = encoding.maxVendorId;
+        if (encoding.ranges != null) {
+            defaultConsent = encoding.defaultConsent;
+            setRanges(encoding.ranges);
+            // the vendors already are the normalized form of these entries
+            vendorBitmap = vendors;
         }
-        return true;
+    }
+
+    /**
+     * Replaces the range entries with those of the builder.
+     */
+    void setRanges(RangeBuilder ranges) {
+        rangeStarts = ranges.starts();
+        rangeEnds = ranges.ends();
+        rangeCount = ranges.count();
+        rangesChanged();
     }
 
     public void rangeConsent(int maxVendorId, boolean isConsent, boolean defaultConsent) {
+        boolean changed = consentChanged;
+        int purposesBefore = purposeMask;
+        normalizeVendors();
+        VendorBitmap vendorsBefore = normalizedVendors();
+        boolean outsideBefore = isAllowedOutsideOfBitmap();
+
         setVendorEncodingType(1); //Range, not bits
         setDefaultConsent(defaultConsent);
-        allowedPurposes.clear();
-        allowedVendors.clear();
-        for (int i=0;i<PURPOSES_SIZE;i++) {
-            allowedPurposes.add(isConsent);
-        }
-        if (rangeEntries != null) {
-            rangeEntries.clear();
-        }
+        setPurposeMask(isConsent ? PurposeSet.ALL : 0);
+        rangeCount = 0;
         addRangeEntry(new RangeEntry(1,maxVendorId));
+        consentChanged = changed || !isSameConsent(purposesBefore, vendorsBefore, outsideBefore);
     }
 
     public void setDefaultConsent(boolean defaultConsent) {
-        this.defaultConsent = defaultConsent;
+        if (defaultConsent != this.defaultConsent) {
+            this.defaultConsent = defaultConsent;
+            rangesChanged();
+        }
     }
 
     public boolean getDefaultConsent() {
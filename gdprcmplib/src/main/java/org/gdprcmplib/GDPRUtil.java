@@ -12,6 +12,7 @@ import android.text.TextUtils;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Basic utility to support all GDPR related functionality.
@@ -22,6 +23,17 @@ class GDPRUtil {
     private static final String OFFICIAL_APPLICABLE = "IABConsent_SubjectToGDPR";
     private static final String OFFICIAL_STRING = "IABConsent_ConsentString";
 
+    /**
+     * The stored consent string, parsed once and shared process wide.  The CMP save path publishes
+     * a new snapshot in one step; a change made behind the library's back replaces it by null so
+     * that the next read parses the stored string again.
+     */
+    private static final AtomicReference<ConsentSnapshot> consentSnapshot = new AtomicReference<>();
+    // bumped on every change, so that a parse racing with a change is not published
+    private static int consentGeneration;
+    // SharedPreferences only keeps a weak reference to its listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener consentListener;
+
     private GDPRUtil() {
         //Private Empty Constructor
     }
@@ -97,11 +109,15 @@ class GDPRUtil {
     }
 
     static void clearGDPRSettings(final Context context) {
+        // writes from elsewhere must reach readers even if consent is never read before
+        registerConsentListener(context);
         try {
-            PreferenceManager.getDefaultSharedPreferences(context).edit().remove(OFFICIAL_APPLICABLE).commit();
-            PreferenceManager.getDefaultSharedPreferences(context).edit().remove(OFFICIAL_STRING).commit();
+            boolean cleared = PreferenceManager.getDefaultSharedPreferences(context).edit().remove(OFFICIAL_APPLICABLE).commit();
+            cleared &= PreferenceManager.getDefaultSharedPreferences(context).edit().remove(OFFICIAL_STRING).commit();
+            publishSnapshot(cleared ? ConsentSnapshot.EMPTY : null);
         } catch (Exception e) {
             MLog.e(TAG, "setIsSubjectToGDPR() failed", e);
+            publishSnapshot(null);
         }
     }
 
@@ -114,10 +130,15 @@ class GDPRUtil {
     }
 
     static void setGDPRConsentString(final Context context, String iabConsentString) {
+        // parse before writing, so that readers move to the new consent as soon as it is stored
+        ConsentSnapshot snapshot = ConsentSnapshot.of(iabConsentString);
+        registerConsentListener(context);
         try {
             PreferenceManager.getDefaultSharedPreferences(context).edit().putString(OFFICIAL_STRING, iabConsentString).apply();
+            publishSnapshot(snapshot);
         } catch (Exception e) {
             MLog.e(TAG, "setGDPRConsentString failed.", e);
+            publishSnapshot(null);
         }
     }
 
@@ -191,16 +212,66 @@ class GDPRUtil {
     }
 
     static boolean isPurposeAllowed(Context context, int purposeId) {
-        String consentString = getGDPRConsentString(context);
-        if (consentString != null) {
-            try {
-                ConsentStringParser consentStringParser = new ConsentStringParser(consentString);
-                return consentStringParser.isPurposeAllowed(purposeId);
-            }catch (Exception e) {
-                MLog.e(TAG, "isPurposeAllowed: " + e.getMessage());
+        return getSnapshot(context).isPurposeAllowed(purposeId);
+    }
+
+    /**
+     * @return the current consent snapshot, only parsing the stored string again after it changed
+     */
+    static ConsentSnapshot getSnapshot(Context context) {
+        ConsentSnapshot snapshot = consentSnapshot.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
+        int generation;
+        registerConsentListener(context);
+        synchronized (GDPRUtil.class) {
+            generation = consentGeneration;
+        }
+        snapshot = ConsentSnapshot.of(getGDPRConsentString(context));
+        synchronized (GDPRUtil.class) {
+            if (generation == consentGeneration) {
+                consentSnapshot.set(snapshot);
             }
         }
-        return false;
+        return snapshot;
+    }
+
+    /**
+     * Registers once the listener dropping the snapshot when the consent string is written by
+     * someone else, e.g. another SDK.  Every read and write path calls it first.
+     */
+    private static synchronized void registerConsentListener(Context context) {
+        if (consentListener != null) {
+            return;
+        }
+        consentListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                // a null key means the preferences were cleared
+                if (key != null && !OFFICIAL_STRING.equals(key)) {
+                    return;
+                }
+                ConsentSnapshot snapshot = consentSnapshot.get();
+                String stored = sharedPreferences.getString(OFFICIAL_STRING, null);
+                // our own writes have already been published
+                if (snapshot == null || !TextUtils.equals(snapshot.getConsentString(), stored)) {
+                    publishSnapshot(null);
+                }
+            }
+        };
+        PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext())
+                .registerOnSharedPreferenceChangeListener(consentListener);
+    }
+
+    /**
+     * Replaces the current snapshot in one step; null makes the next read parse the stored string.
+     */
+    private static void publishSnapshot(ConsentSnapshot snapshot) {
+        synchronized (GDPRUtil.class) {
+            consentGeneration++;
+            consentSnapshot.set(snapshot);
+        }
     }
 
 }
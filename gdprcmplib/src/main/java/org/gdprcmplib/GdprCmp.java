@@ -7,6 +7,8 @@ import android.text.TextUtils;
 
 public class GdprCmp {
 
+    private static volatile HttpTransport sHttpTransport = new UrlConnectionHttpTransport();
+
     private void GdprCmp() {}
 
     /**
@@ -106,4 +108,31 @@ public class GdprCmp {
         return GDPRUtil.isPurposeAllowed(context, purposeId);
     }
 
+    /**
+     * Returns the current consent as an immutable snapshot.  The stored consent string is only
+     * parsed again after it changed, so this is cheap to call from any thread, as are the queries
+     * on the returned snapshot.
+     *
+     * @param context
+     * @return consent snapshot.  Allows nothing if no consent string is stored.
+     */
+    public static ConsentSnapshot getSnapshot(Context context) {
+        return GDPRUtil.getSnapshot(context);
+    }
+
+    /**
+     * Routes the requests for the vendor list and the language specific purposes through the
+     * given transport, e.g. one on the HTTP client of the app to reuse its connections.
+     *
+     * @param transport - the transport to use from now on.  null restores the default,
+     *                  {@link UrlConnectionHttpTransport}.
+     */
+    public static void setHttpTransport(HttpTransport transport) {
+        sHttpTransport = transport != null ? transport : new UrlConnectionHttpTransport();
+    }
+
+    static HttpTransport getHttpTransport() {
+        return sHttpTransport;
+    }
+
 }
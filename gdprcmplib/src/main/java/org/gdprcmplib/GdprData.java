@@ -29,15 +29,7 @@ class GdprData implements Serializable {
     public GdprData(JSONObject vendorJSON, JSONObject langJSON) {
         try {
             JSONObject primaryJSON = langJSON != null ? langJSON : vendorJSON;
-            String s = primaryJSON.optString("lastUpdated");
-            if (s != null && s.contains("T")) {
-                s = s.substring(0,s.indexOf('T'));
-                try {
-                    lastUpdated = SDF.parse(s).getTime();
-                }catch (Exception e) {
-                    MLog.e(TAG,"Could not parse date: "+s);
-                }
-            }
+            setLastUpdated(primaryJSON.optString("lastUpdated"));
             vendorListVersion = primaryJSON.optInt("vendorListVersion");
             JSONArray purposesArr = primaryJSON.optJSONArray("purposes");
             for (int i=0;purposesArr != null && i < purposesArr.length();i++) {
@@ -62,6 +54,42 @@ class GdprData implements Serializable {
         }
     }
 
+    /**
+     * Same as {@link #GdprData(JSONObject, JSONObject)}, from streamed documents.
+     */
+    GdprData(VendorList vendorList, VendorList langList) {
+        VendorList primaryList = langList != null ? langList : vendorList;
+        setLastUpdated(primaryList.lastUpdated);
+        vendorListVersion = primaryList.vendorListVersion;
+        for (int i=0;i < primaryList.purposes.size();i++) {
+            GdprPurpose p = primaryList.purposes.get(i);
+            purposesMap.put(p.getId(),p);
+            purposes.add(p);
+        }
+        for (int i=0;i < primaryList.features.size();i++) {
+            GdprFeature f = primaryList.features.get(i);
+            featuresMap.put(f.getId(),f);
+        }
+        for (int i=0;i < vendorList.vendors.size();i++) {
+            VendorList.Vendor v = vendorList.vendors.get(i);
+            vendors.add(new GdprVendor(v.id, v.name, v.policyUrl, v.purposeIds, v.legIntPurposeIds, v.featureIds,
+                    purposesMap, featuresMap));
+        }
+        Collections.sort(vendors);
+        Collections.sort(purposes);
+    }
+
+    private void setLastUpdated(String s) {
+        if (s != null && s.contains("T")) {
+            s = s.substring(0,s.indexOf('T'));
+            try {
+                lastUpdated = SDF.parse(s).getTime();
+            }catch (Exception e) {
+                MLog.e(TAG,"Could not parse date: "+s);
+            }
+        }
+    }
+
     public Date getLastUpdated() {
         return new Date(lastUpdated);
     }
@@ -80,15 +108,21 @@ class GdprData implements Serializable {
 
     void initStateWith(ConsentStringParser consentString) {
         if (purposes != null) {
+            int purposeMask = consentString.getPurposeMask();
             for (int i=0; i < purposes.size();i++) {
                 GdprPurpose purpose = purposes.get(i);
-                purpose.setAllowed(consentString.isPurposeAllowed(purpose.getId()));
+                purpose.setAllowed(PurposeSet.contains(purposeMask, purpose.getId()));
             }
         }
         if (vendors != null) {
-            for (int i=0; i < vendors.size();i++) {
-                GdprVendor vendor = vendors.get(i);
-                vendor.setAllowed(consentString.isVendorAllowed(vendor.getId()));
+            int[] vendorIds = new int[vendors.size()];
+            for (int i=0; i < vendorIds.length;i++) {
+                vendorIds[i] = vendors.get(i).getId();
+            }
+            boolean[] allowed = new boolean[vendorIds.length];
+            consentString.areVendorsAllowed(vendorIds, allowed);
+            for (int i=0; i < vendorIds.length;i++) {
+                vendors.get(i).setAllowed(allowed[i]);
             }
         }
     }
@@ -54,6 +54,23 @@ class GdprVendor implements Serializable, Comparable<GdprVendor> {
         this.policyUrl = policyUrl;
     }
 
+    GdprVendor(int id, String name, String policyUrl, int[] purposeIds, int[] legIntPurposeIds, int[] featureIds,
+               Map<Integer, GdprPurpose> purposesMap, Map<Integer, GdprFeature> featuresMap) {
+        this(id, name, policyUrl);
+        purposes = new ArrayList<>(purposeIds.length);
+        features = new ArrayList<>(featureIds.length);
+        legIntPurposes = new ArrayList<>(legIntPurposeIds.length);
+        for (int purposeId : purposeIds) {
+            purposes.add(purposesMap.get(purposeId));
+        }
+        for (int legIntPurposeId : legIntPurposeIds) {
+            legIntPurposes.add(purposesMap.get(legIntPurposeId));
+        }
+        for (int featureId : featureIds) {
+            features.add(featuresMap.get(featureId));
+        }
+    }
+
     public int getId() {
         return id;
     }
@@ -0,0 +1,368 @@
+package org.gdprcmplib;
+
+import android.content.Context;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disk cache of response bodies for conditional GETs, see
+ * {@link HttpMessage#read(HttpCache, HttpMessage.BodyParser)}.
+ *
+ * Only responses carrying an ETag or Last-Modified header are stored, together with those
+ * validators, so that the next request for the url can be revalidated with If-None-Match or
+ * If-Modified-Since and a 304 answered from disk.  The bodies are bounded to maxSize bytes in
+ * total; the least recently used entries are evicted first.  Recency is tracked in memory and
+ * survives restarts through the modification time of the files.
+ *
+ * Every url is stored as two files named after the SHA-1 of the url: KEY.meta holding the url and
+ * the validators, and KEY.body.  All methods are thread safe.
+ */
+final class HttpCache {
+
+    private static final String TAG = "HttpCache";
+    private static final String UTF8 = "UTF-8";
+    private static final String META = ".meta";
+    private static final String BODY = ".body";
+
+    private static HttpCache sInstance;
+
+    private final File directory;
+    private final long maxSize;
+    // key to body size, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    /**
+     * A stored response.
+     */
+    static final class Entry {
+        final String url;
+        final String etag;
+        final String lastModified;
+        private final String key;
+
+        private Entry(String key, String url, String etag, String lastModified) {
+            this.key = key;
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * @return the cache of the library, in the cache directory of the app
+     */
+    static synchronized HttpCache get(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), "gdprcmp-http");
+            sInstance = new HttpCache(directory, Config.HTTP_CACHE_MAX_SIZE);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param maxSize the bound of the total size of the stored bodies in bytes
+     */
+    HttpCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        load();
+    }
+
+    // indexes the stored bodies, least recently used first
+    private void load() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> bodies = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(BODY) && new File(directory, keyOf(file) + META).isFile()) {
+                bodies.add(file);
+            } else if (!file.getName().endsWith(META) || !new File(directory, keyOf(file) + BODY).isFile()) {
+                // left behind by an interrupted write
+                file.delete();
+            }
+        }
+        Collections.sort(bodies, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (File body : bodies) {
+            entries.put(keyOf(body), body.length());
+            size += body.length();
+        }
+        trim();
+    }
+
+    private static String keyOf(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    /**
+     * @return the validators stored for url, or null if the url is not cached
+     */
+    synchronized Entry get(String url) {
+        String key = keyFor(url);
+        if (!entries.containsKey(key)) {
+            return null;
+        }
+        try {
+            BufferedReader meta = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(new File(directory, key + META)), UTF8));
+            try {
+                String storedUrl = meta.readLine();
+                String etag = meta.readLine();
+                String lastModified = meta.readLine();
+                if (!url.equals(storedUrl)) {
+                    return null;
+                }
+                return new Entry(key, url, emptyToNull(etag), emptyToNull(lastModified));
+            } finally {
+                meta.close();
+            }
+        } catch (IOException e) {
+            MLog.e(TAG, "get() failed for " + url, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Opens the body of an entry after the server answered 304 Not Modified, and marks it as
+     * used.  The stream stays readable if the entry is evicted while it is open.
+     *
+     * @throws IOException if the entry has been evicted in the meantime, or its body deleted; the
+     *         entry is then removed
+     */
+    synchronized InputStream openBody(Entry entry) throws IOException {
+        if (entries.get(entry.key) == null) {
+            throw new IOException("evicted: " + entry.url);
+        }
+        File file = new File(directory, entry.key + BODY);
+        InputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            // the system may delete single files of the cache directory
+            remove(entry.key);
+            throw e;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return in;
+    }
+
+    /**
+     * Starts storing a response body with its validators, to be written while the response is
+     * read.  Nothing is visible until {@link Body#commit()}; a body without validators or
+     * exceeding maxSize is dropped.
+     */
+    Body newBody(String url, String etag, String lastModified) {
+        return new Body(url, etag, lastModified);
+    }
+
+    /**
+     * A response body being written to a temporary file.  It never throws: a failed write drops
+     * the body, and the previous entry of the url, on {@link #commit()}.
+     */
+    final class Body extends OutputStream {
+        private final String key;
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private File tmp;
+        private OutputStream out;
+        private long length;
+        private boolean done;
+        private boolean committed;
+
+        private Body(String url, String etag, String lastModified) {
+            this.key = keyFor(url);
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            // nothing to revalidate with
+            done = etag == null && lastModified == null;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (done) {
+                return;
+            }
+            length += len;
+            if (length > maxSize) {
+                abort();
+                return;
+            }
+            try {
+                if (out == null) {
+                    if (!directory.isDirectory() && !directory.mkdirs()) {
+                        throw new IOException("cannot create " + directory);
+                    }
+                    tmp = File.createTempFile(key, ".tmp", directory);
+                    out = new FileOutputStream(tmp);
+                }
+                out.write(b, off, len);
+            } catch (IOException e) {
+                MLog.e(TAG, "write failed for " + url, e);
+                abort();
+            }
+        }
+
+        /**
+         * Makes the body the entry of its url, replacing the previous one; if the body was
+         * dropped, the previous one is removed all the same.
+         */
+        void commit() {
+            if (committed) {
+                return;
+            }
+            committed = true;
+            if (!done && out == null) {
+                // empty body
+                write(new byte[0], 0, 0);
+            }
+            if (!done) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    MLog.e(TAG, "write failed for " + url, e);
+                    abort();
+                }
+            }
+            synchronized (HttpCache.this) {
+                remove(key);
+                if (done) {
+                    return;
+                }
+                done = true;
+                File metaFile = new File(directory, key + META);
+                try {
+                    // the body is renamed into place last, so a body always has its meta data
+                    Writer meta = new OutputStreamWriter(new FileOutputStream(metaFile), UTF8);
+                    try {
+                        meta.write(url + "\n" + nullToEmpty(etag) + "\n" + nullToEmpty(lastModified) + "\n");
+                    } finally {
+                        meta.close();
+                    }
+                    if (!tmp.renameTo(new File(directory, key + BODY))) {
+                        throw new IOException("cannot rename " + tmp);
+                    }
+                } catch (IOException e) {
+                    MLog.e(TAG, "commit failed for " + url, e);
+                    tmp.delete();
+                    metaFile.delete();
+                    return;
+                }
+                entries.put(key, length);
+                size += length;
+                trim();
+            }
+        }
+
+        /**
+         * Drops the body; the previous entry of the url, if any, is kept.  Does nothing after
+         * {@link #commit()}.
+         */
+        void abort() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+                tmp.delete();
+            }
+        }
+
+        @Override
+        public void close() {
+            abort();
+        }
+    }
+
+    /**
+     * @return the total size of the stored bodies in bytes
+     */
+    synchronized long size() {
+        return size;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            size -= entry.getValue();
+            delete(entry.getKey());
+        }
+    }
+
+    private void remove(String key) {
+        Long length = entries.remove(key);
+        if (length != null) {
+            size -= length;
+        }
+        delete(key);
+    }
+
+    private void delete(String key) {
+        new File(directory, key + BODY).delete();
+        new File(directory, key + META).delete();
+    }
+
+    private static String keyFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(UTF8));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // SHA-1 and UTF-8 are always available
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String emptyToNull(String s) {
+        return s == null || s.isEmpty() ? null : s;
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+}
@@ -4,35 +4,34 @@ import org.json.JSONObject;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
-import java.util.Iterator;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-
 final class HttpMessage {
 
     private static final String TAG = "HttpMessage";
 
-    private URL url = null;
-    private boolean isSecure = false;
-    private static volatile boolean sIsInitialized = false;
+    private final String url;
+    private final HttpTransport transport;
     private static final String UTF8 = "UTF-8";
     private static final int BUFFERED_READER_SIZE = 8192;
-    private static final int HTTP_TIMEOUT = 15000;
+    private static final int MAX_PRESIZED_CHARS = 64 * 1024;
+
+    // of the last response read, see getWireBytes() and getBodyBytes()
+    private CountingInputStream wire;
+    private CountingInputStream body;
 
     /**
      * Constructs a new HttpMessage that can be used to communicate with the
@@ -43,13 +42,12 @@ final class HttpMessage {
      */
 
     public HttpMessage(final String url) {
-        try {
-            this.url = new URL(url);
-            if (url.startsWith("https://")) {
-                isSecure = true;
-            }
-        } catch (final MalformedURLException e) {
-        }
+        this(url, GdprCmp.getHttpTransport());
+    }
+
+    HttpMessage(final String url, final HttpTransport transport) {
+        this.url = url;
+        this.transport = transport;
     }
 
     /**
@@ -60,14 +58,13 @@ final class HttpMessage {
      * @throws Exception
      */
     public int getInt() throws Exception {
-        final URLConnection urlConnection = openConnection();
-        assignCommonAttributesToHttpURLConnection(urlConnection, true, false);
-        ((HttpURLConnection) urlConnection).setRequestMethod("GET");
-        urlConnection.setRequestProperty("Content-Type", "text/plain;charset=utf-8");
-        final BufferedReader is = new BufferedReader(new InputStreamReader(urlConnection.getInputStream()), 32);
-        final int someInt = Integer.parseInt(is.readLine());
-        is.close();
-        return someInt;
+        final HttpTransport.Response response = send(newHeaders("text/plain;charset=utf-8", false));
+        try {
+            final BufferedReader is = new BufferedReader(new InputStreamReader(openBody(response.getBody(), false)), 32);
+            return Integer.parseInt(is.readLine());
+        } finally {
+            response.close();
+        }
     }
 
     /**
@@ -78,154 +75,289 @@ final class HttpMessage {
      * @throws Exception
      */
     public String getString() throws Exception {
-        final URLConnection urlConnection = openConnection();
-        assignCommonAttributesToHttpURLConnection(urlConnection, true, false);
-        ((HttpURLConnection) urlConnection).setRequestMethod("GET");
-        urlConnection.setRequestProperty("Content-Type", "text/plain;charset=utf-8");
-        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
-        final InputStream is = urlConnection.getInputStream();
-        final boolean isGzip = responseIsGzip(urlConnection);
-        final InputStream ois = isGzip ? new GZIPInputStream(is) : is;
-        MLog.d(TAG,"getString() isGzip? "+isGzip);
-        final String string = getString(ois);
-        is.close();
-        return string;
+        final HttpTransport.Response response = send(newHeaders("text/plain;charset=utf-8", true));
+        try {
+            final boolean isGzip = responseIsGzip(response);
+            MLog.d(TAG,"getString() isGzip? "+isGzip);
+            final String string = getString(openBody(response.getBody(), isGzip), getContentLength(response));
+            logSize("getString()");
+            return string;
+        } finally {
+            response.close();
+        }
     }
 
     public JSONObject getJSONObject() throws Exception {
         return new JSONObject(getString());
     }
 
-    public byte[] getBytes() throws Exception {
-        final URLConnection urlConnection = openConnection();
-        assignCommonAttributesToHttpURLConnection(urlConnection, true, false);
-        ((HttpURLConnection) urlConnection).setRequestMethod("GET");
-        urlConnection.setRequestProperty("Content-Type", "application/octet-stream");
-        final InputStream is = urlConnection.getInputStream();
-        final byte[] bytes = getBytes(is);
-        is.close();
-        return bytes;
+    /**
+     * Parses a response body, see {@link #read(HttpCache, BodyParser)}.
+     */
+    interface BodyParser<T> {
+        T parse(InputStream body) throws Exception;
     }
 
-    private byte[] getBytes(final InputStream is) throws IOException {
-
-        int len = 0;
-        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        final byte[] buf = new byte[4096];
-        while ((len = is.read(buf, 0, buf.length)) != -1)
-            bos.write(buf, 0, len);
-        return bos.toByteArray();
+    /**
+     * Streams the response body into parser, without buffering it.  The copy of the response in
+     * cache, if there is one, is revalidated and parsed from disk on a 304 Not Modified; a new
+     * response is stored while it is parsed, provided parser succeeds.
+     */
+    public <T> T read(final HttpCache cache, final BodyParser<T> parser) throws Exception {
+        return read(cache, parser, true);
     }
 
-    private URLConnection openConnection() throws IOException {
-        initializeSSL();
-        return isSecure ? openSecureConnection() : url.openConnection();
+    // without revalidate, the response is requested in full and only stored
+    private <T> T read(final HttpCache cache, final BodyParser<T> parser, final boolean revalidate)
+            throws Exception {
+        final HttpCache.Entry cached = revalidate ? cache.get(url) : null;
+        final Map<String, String> headers = newHeaders("text/plain;charset=utf-8", true);
+        if (cached != null && cached.etag != null) {
+            headers.put("If-None-Match", cached.etag);
+        }
+        if (cached != null && cached.lastModified != null) {
+            headers.put("If-Modified-Since", cached.lastModified);
+        }
+        final HttpTransport.Response response = send(headers);
+        try {
+            if (cached != null && response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                MLog.d(TAG, "read() not modified: " + url);
+                final InputStream is;
+                try {
+                    is = cache.openBody(cached);
+                } catch (final IOException e) {
+                    // evicted or deleted since, fetch it in full once
+                    response.close();
+                    return read(cache, parser, false);
+                }
+                wire = null;
+                body = new CountingInputStream(is);
+                try {
+                    return parser.parse(body);
+                } finally {
+                    is.close();
+                }
+            }
+            final InputStream ois = openBody(response.getBody(), responseIsGzip(response));
+            final HttpCache.Body stored = cache.newBody(url, response.getHeader("ETag"),
+                    response.getHeader("Last-Modified"));
+            try {
+                final InputStream tee = new TeeInputStream(ois, stored);
+                final T result = parser.parse(tee);
+                // whatever the parser left unread
+                final byte[] buf = new byte[4096];
+                while (tee.read(buf, 0, buf.length) != -1) {
+                }
+                stored.commit();
+                logSize("read()");
+                return result;
+            } finally {
+                stored.abort();
+            }
+        } finally {
+            response.close();
+        }
     }
 
     /**
-     * To open secure connection, use this
-     *
-     * @return
-     * @throws Exception
+     * @return the number of bytes of the last response body read off the connection, compressed
+     *         or not; 0 if it was answered from the cache
      */
-    private URLConnection openSecureConnection() throws IOException {
-        return (HttpsURLConnection) url.openConnection();
+    long getWireBytes() {
+        return wire != null ? wire.count : 0;
     }
 
     /**
-     * Apparently, since this is not based on the HttpDefaultClient
-     * implementation we do not need to collect the certificates from the
-     * server.
+     * @return the number of bytes of the last response body after decompression
      */
-    private static void setDefaultHostnameVerifier() throws Exception {
+    long getBodyBytes() {
+        return body != null ? body.count : 0;
+    }
 
-        // Install the all-trusting trust manager:
-        final TrustManager[] trustAllCerts = new TrustManager[]{new X509TrustManager() {
-            public X509Certificate[] getAcceptedIssuers() {
-                return null;
-            }
+    // counts what is read from is, before and after decompression
+    private InputStream openBody(final InputStream is, final boolean isGzip) throws IOException {
+        wire = new CountingInputStream(is);
+        body = isGzip ? new CountingInputStream(new GZIPInputStream(wire)) : wire;
+        return body;
+    }
 
-            @SuppressWarnings("unused")
-            public boolean isServerTrusted(X509Certificate[] certs) {
-                return true;
-            }
+    private void logSize(final String method) {
+        MLog.d(TAG, method + " " + url + ": " + getWireBytes() + " bytes on the wire, "
+                + getBodyBytes() + " decompressed");
+    }
 
-            @SuppressWarnings("unused")
-            public boolean isClientTrusted(X509Certificate[] certs) {
-                return true;
-            }
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
 
-            public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            if (b != -1) {
+                count++;
             }
+            return b;
+        }
 
-            public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
             }
-        }};
+            return n;
+        }
 
-        final SSLContext sc = SSLContext.getInstance("TLS");
-        sc.init(null, trustAllCerts, new java.security.SecureRandom());
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
 
-        HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
-        //HttpsURLConnection.setDefaultHostnameVerifier(new AllowAllHostnameVerifier());
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
     }
 
-    private void assignCommonAttributesToHttpURLConnection(final URLConnection urlConnection, final boolean doInput, final boolean doOutput) {
-        urlConnection.setUseCaches(false);
+    /**
+     * Copies what is read to out.
+     */
+    private static final class TeeInputStream extends FilterInputStream {
+        private final OutputStream out;
+
+        TeeInputStream(final InputStream in, final OutputStream out) {
+            super(in);
+            this.out = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            if (b != -1) {
+                out.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = in.read(b, off, len);
+            if (n > 0) {
+                out.write(b, off, n);
+            }
+            return n;
+        }
 
-		/*
-         * the following lines mess stuff up a lot especially in later versions
-		 * of android ics
-		 */
-        if (doInput)
-            urlConnection.setDoInput(true);
+        @Override
+        public long skip(final long n) throws IOException {
+            final byte[] buf = new byte[(int) Math.min(n, 4096)];
+            final int read = read(buf, 0, buf.length);
+            return read < 0 ? 0 : read;
+        }
 
-        if (doOutput)
-            urlConnection.setDoOutput(true);
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 
-        urlConnection.setConnectTimeout(HTTP_TIMEOUT);
-        urlConnection.setReadTimeout(HTTP_TIMEOUT);
+    public byte[] getBytes() throws Exception {
+        final HttpTransport.Response response = send(newHeaders("application/octet-stream", false));
+        try {
+            return getBytes(openBody(response.getBody(), false));
+        } finally {
+            response.close();
+        }
     }
 
-    private String getString(final InputStream is) throws Exception {
+    private byte[] getBytes(final InputStream is) throws IOException {
 
-        final StringBuilder sb = new StringBuilder(BUFFERED_READER_SIZE);
-        final byte buf[] = new byte[BUFFERED_READER_SIZE];
-        int read;
-        while ((read = is.read(buf)) != -1) {
-            sb.append(new String(buf, 0, read, UTF8));
+        int len = 0;
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        while ((len = is.read(buf, 0, buf.length)) != -1)
+            bos.write(buf, 0, len);
+        return bos.toByteArray();
+    }
+
+    private static Map<String, String> newHeaders(final String contentType, final boolean acceptGzip) {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", contentType);
+        if (acceptGzip) {
+            headers.put("Accept-Encoding", "gzip");
         }
-        return sb.toString();
+        return headers;
     }
 
-    private boolean responseIsGzip(final URLConnection urlConnection) {
+    // an error status fails, as it did with HttpURLConnection.getInputStream()
+    private HttpTransport.Response send(final Map<String, String> headers) throws IOException {
+        final HttpTransport.Response response = transport.get(url, headers);
+        if (response.getCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            response.close();
+            throw new IOException("HTTP " + response.getCode() + ": " + url);
+        }
+        return response;
+    }
 
-        final Map<String, List<String>> responseHeaders = (Map<String, List<String>>) urlConnection.getHeaderFields();
-        if (responseHeaders != null) {
-            final Iterator<String> i = responseHeaders.keySet().iterator();
-            while (i.hasNext()) {
-                final String key = i.next();
-                // System.out.println("header key = " + key);
-                final List<String> values = responseHeaders.get(key);
-                for (final String value : values) {
-                    // System.out.println("\t\theader value = " + value);
-                    if (value.equals("gzip")) {
-                        return true;
-                    }
-                }
+    /**
+     * Decodes a UTF-8 body with one decoder, so that characters split between two reads come
+     * out whole.
+     *
+     * @param contentLength the Content-Length of the response, or -1; the decoded body has at
+     *                      most as many chars unless it is compressed
+     */
+    private String getString(final InputStream is, final int contentLength) throws IOException {
+        final CharsetDecoder decoder = Charset.forName(UTF8).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final ByteBuffer bytes = ByteBuffer.allocate(BUFFERED_READER_SIZE);
+        // a Content-Length is only trusted so far, larger bodies grow the buffer as they arrive
+        CharBuffer chars = CharBuffer.allocate(contentLength > 0
+                ? Math.min(contentLength, MAX_PRESIZED_CHARS) : BUFFERED_READER_SIZE);
+        boolean eof = false;
+        while (!eof) {
+            final int read = is.read(bytes.array(), bytes.position(), bytes.remaining());
+            if (read < 0) {
+                eof = true;
+            } else {
+                bytes.position(bytes.position() + read);
             }
+            bytes.flip();
+            while (decoder.decode(bytes, chars, eof).isOverflow()) {
+                chars = grow(chars);
+            }
+            // keeps the bytes of an incomplete character for the next read
+            bytes.compact();
+        }
+        while (decoder.flush(chars).isOverflow()) {
+            chars = grow(chars);
         }
-        return false;
+        chars.flip();
+        return chars.toString();
     }
 
-    static void initializeSSL() {
-        if (sIsInitialized) {
-            return;
-        }
+    private static CharBuffer grow(final CharBuffer chars) {
+        final CharBuffer grown = CharBuffer.allocate(Math.max(BUFFERED_READER_SIZE, chars.capacity() * 2));
+        chars.flip();
+        return grown.put(chars);
+    }
+
+    private static boolean responseIsGzip(final HttpTransport.Response response) {
+        final String encoding = response.getHeader("Content-Encoding");
+        return encoding != null && encoding.trim().equalsIgnoreCase("gzip");
+    }
+
+    private static int getContentLength(final HttpTransport.Response response) {
         try {
-            //setDefaultHostnameVerifier();
-            sIsInitialized = true;
-        } catch (final Exception e) {
-            MLog.e(TAG, "", e);
+            return Integer.parseInt(response.getHeader("Content-Length"));
+        } catch (final NumberFormatException e) {
+            // none, or not an int
+            return -1;
         }
     }
 
@@ -0,0 +1,49 @@
+package org.gdprcmplib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Performs the HTTP requests of the CMP, for the vendor list and the language specific purposes.
+ * By default they go through {@link UrlConnectionHttpTransport}; an app can route them through
+ * its own HTTP client with {@link GdprCmp#setHttpTransport(HttpTransport)}, e.g. to reuse its
+ * warm connections.  Implementations must be thread safe.
+ */
+public interface HttpTransport {
+
+    /**
+     * Sends a GET request.
+     *
+     * @param url the absolute url
+     * @param headers request headers, e.g. Accept-Encoding and If-None-Match
+     * @return the response, whatever its status code; the CMP closes it
+     * @throws IOException if no response was received
+     */
+    Response get(String url, Map<String, String> headers) throws IOException;
+
+    /**
+     * A response to {@link #get(String, Map)}.
+     */
+    interface Response extends Closeable {
+
+        /**
+         * @return the HTTP status code
+         */
+        int getCode();
+
+        /**
+         * @param name case insensitive
+         * @return the value of the response header, or null if there is none
+         */
+        String getHeader(String name);
+
+        /**
+         * @return the body as it was sent.  A body compressed as per the Accept-Encoding of the
+         *         request must come with its Content-Encoding header, or be decompressed and come
+         *         without it.
+         */
+        InputStream getBody() throws IOException;
+    }
+}
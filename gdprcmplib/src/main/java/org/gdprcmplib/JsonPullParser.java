@@ -0,0 +1,414 @@
+package org.gdprcmplib;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Minimal streaming JSON parser in the manner of android.util.JsonReader, which also runs on the
+ * plain JVM.  Values are read one token at a time through a fixed buffer, so that a document is
+ * never held in memory as a whole; values that are not needed are passed over with
+ * {@link #skipValue()} without being materialized.
+ *
+ * Malformed input raises an {@link IOException} giving the character offset.
+ */
+final class JsonPullParser implements Closeable {
+
+    enum Token {
+        BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    // a name was read, its value has not
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader in;
+    private final char[] buf = new char[4096];
+    private int pos;
+    private int limit;
+    // characters before buf[0]
+    private long offset;
+
+    private int[] stack = new int[16];
+    private int depth;
+
+    // null until the next token is peeked; the opening quote of a name or string is consumed
+    // on peeking, the characters of a number are not
+    private Token peeked;
+    private boolean peekedBoolean;
+    private final StringBuilder builder = new StringBuilder();
+
+    JsonPullParser(Reader in) {
+        this.in = in;
+        stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int scope = stack[depth - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace(true);
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (scope == NONEMPTY_ARRAY) {
+                    if (c != ',') {
+                        throw syntaxError("expected ',' or ']'");
+                    }
+                    c = nextNonWhitespace(true);
+                }
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace(true);
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace(true);
+                }
+                if (c != '"') {
+                    throw syntaxError("expected a name");
+                }
+                stack[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                if (nextNonWhitespace(true) != ':') {
+                    throw syntaxError("expected ':'");
+                }
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                c = nextNonWhitespace(true);
+                break;
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                c = nextNonWhitespace(true);
+                break;
+            default:
+                if (nextNonWhitespace(false) != -1) {
+                    throw syntaxError("expected the end of the document");
+                }
+                return peeked = Token.END_DOCUMENT;
+        }
+        switch (c) {
+            case '{':
+                return peeked = Token.BEGIN_OBJECT;
+            case '[':
+                return peeked = Token.BEGIN_ARRAY;
+            case '"':
+                return peeked = Token.STRING;
+            case 't':
+                readLiteral("rue");
+                peekedBoolean = true;
+                return peeked = Token.BOOLEAN;
+            case 'f':
+                readLiteral("alse");
+                peekedBoolean = false;
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                readLiteral("ull");
+                return peeked = Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    // the number is read by the next call
+                    pos--;
+                    return peeked = Token.NUMBER;
+                }
+                throw syntaxError("unexpected character '" + (char) c + "'");
+        }
+    }
+
+    boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_ARRAY && token != Token.END_OBJECT && token != Token.END_DOCUMENT;
+    }
+
+    void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * @return the next string, or the literal of the next number
+     */
+    String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            peeked = null;
+            return readString();
+        }
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return readNumber();
+        }
+        throw syntaxError("expected a string but was " + token);
+    }
+
+    /**
+     * @throws NumberFormatException if the next number, or string, is not an int
+     */
+    int nextInt() throws IOException {
+        String literal = nextString();
+        try {
+            return Integer.parseInt(literal);
+        } catch (NumberFormatException e) {
+            double value = Double.parseDouble(literal);
+            if ((int) value != value) {
+                throw new NumberFormatException("not an int: " + literal);
+            }
+            return (int) value;
+        }
+    }
+
+    boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return peekedBoolean;
+    }
+
+    void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    /**
+     * Skips the next value, with everything nested in it.
+     */
+    void skipValue() throws IOException {
+        int nesting = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_ARRAY:
+                    beginArray();
+                    nesting++;
+                    break;
+                case BEGIN_OBJECT:
+                    beginObject();
+                    nesting++;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    nesting--;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    nesting--;
+                    break;
+                case NAME:
+                case STRING:
+                    peeked = null;
+                    skipString();
+                    break;
+                case NUMBER:
+                    peeked = null;
+                    skipNumber();
+                    break;
+                case END_DOCUMENT:
+                    throw new EOFException("no value to skip");
+                default:
+                    peeked = null;
+                    break;
+            }
+        } while (nesting > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void expect(Token token) throws IOException {
+        Token actual = peek();
+        if (actual != token) {
+            throw syntaxError("expected " + token + " but was " + actual);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = scope;
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        int n;
+        do {
+            n = in.read(buf, 0, buf.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    private int nextChar() throws IOException {
+        if (pos == limit && !fill()) {
+            throw new EOFException("end of input at offset " + offset);
+        }
+        return buf[pos++];
+    }
+
+    // returns -1 at the end of the input unless required
+    private int nextNonWhitespace(boolean required) throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                if (required) {
+                    throw new EOFException("end of input at offset " + offset);
+                }
+                return -1;
+            }
+            char c = buf[pos++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+    }
+
+    private void readLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (nextChar() != rest.charAt(i)) {
+                throw syntaxError("unexpected literal");
+            }
+        }
+    }
+
+    // after the opening quote
+    private String readString() throws IOException {
+        // most strings have no escapes and sit in the buffer as they are
+        for (int i = pos; i < limit; i++) {
+            char c = buf[i];
+            if (c == '"') {
+                String s = new String(buf, pos, i - pos);
+                pos = i + 1;
+                return s;
+            }
+            if (c == '\\') {
+                break;
+            }
+        }
+        builder.setLength(0);
+        while (true) {
+            int c = nextChar();
+            if (c == '"') {
+                return builder.toString();
+            }
+            if (c == '\\') {
+                c = nextChar();
+                switch (c) {
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'u':
+                        c = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(nextChar(), 16);
+                            if (digit < 0) {
+                                throw syntaxError("malformed \\u escape");
+                            }
+                            c = (c << 4) | digit;
+                        }
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        break;
+                    default:
+                        throw syntaxError("invalid escape '\\" + (char) c + "'");
+                }
+            } else if (c < 0x20) {
+                throw syntaxError("unescaped control character");
+            }
+            builder.append((char) c);
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = nextChar();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                nextChar();
+            }
+        }
+    }
+
+    private String readNumber() throws IOException {
+        builder.setLength(0);
+        while (pos < limit || fill()) {
+            char c = buf[pos];
+            if (!isNumberChar(c)) {
+                break;
+            }
+            builder.append(c);
+            pos++;
+        }
+        return builder.toString();
+    }
+
+    private void skipNumber() throws IOException {
+        while ((pos < limit || fill()) && isNumberChar(buf[pos])) {
+            pos++;
+        }
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at offset " + (offset + pos - 1));
+    }
+}
@@ -0,0 +1,69 @@
+package org.gdprcmplib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helpers for purpose sets packed into an int, where bit purposeId - 1 stands for the purpose.
+ * Requiring several purposes at once becomes a single AND and compare, see
+ * {@link ConsentStringParser#arePurposesAllowed(int)}.
+ */
+final class PurposeSet {
+
+    /**
+     * The highest purpose id a consent string can hold.
+     */
+    static final int MAX_PURPOSE_ID = ConsentStringParser.PURPOSES_SIZE;
+
+    /**
+     * Mask holding every purpose a consent string can hold.
+     */
+    static final int ALL = (1 << MAX_PURPOSE_ID) - 1;
+
+    private PurposeSet() {
+    }
+
+    /**
+     * @return the mask of the given purpose ids
+     * @throws IllegalArgumentException if an id lies outside of 1 to {@link #MAX_PURPOSE_ID}
+     */
+    static int of(int... purposeIds) {
+        int mask = 0;
+        for (int purposeId : purposeIds) {
+            if (purposeId < 1 || purposeId > MAX_PURPOSE_ID) {
+                throw new IllegalArgumentException("purposeId: " + purposeId);
+            }
+            mask |= 1 << (purposeId - 1);
+        }
+        return mask;
+    }
+
+    static boolean contains(int mask, int purposeId) {
+        return purposeId >= 1 && purposeId <= MAX_PURPOSE_ID && (mask & (1 << (purposeId - 1))) != 0;
+    }
+
+    /**
+     * @return whether every purpose of required is also in mask
+     */
+    static boolean containsAll(int mask, int required) {
+        return (mask & required) == required;
+    }
+
+    static int size(int mask) {
+        return Integer.bitCount(mask & ALL);
+    }
+
+    /**
+     * @return the purpose ids of the mask in ascending order, as an unmodifiable list
+     */
+    static List<Integer> toList(int mask) {
+        mask &= ALL;
+        List<Integer> purposeIds = new ArrayList<>(Integer.bitCount(mask));
+        while (mask != 0) {
+            purposeIds.add(Integer.numberOfTrailingZeros(mask) + 1);
+            mask &= mask - 1;
+        }
+        return Collections.unmodifiableList(purposeIds);
+    }
+}
@@ -0,0 +1,138 @@
+package org.gdprcmplib;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.gdprcmplib.ConsentStringParser.VENDOR_ID_SIZE;
+
+/**
+ * Collects vendor ids in ascending order into the minimal list of range entries: every run of
+ * consecutive ids becomes one entry, either a single id or a start and end id.  Ids are taken in
+ * one pass and nothing is boxed.
+ */
+final class RangeBuilder {
+
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int count;
+
+    /**
+     * Collects the ids of the runs of vendors whose bit equals set, from 1 to maxVendorId.
+     */
+    static RangeBuilder fromBitmap(VendorBitmap vendors, int maxVendorId, boolean set) {
+        RangeBuilder builder = new RangeBuilder();
+        int start = set ? vendors.nextSetBit(1) : vendors.nextClearBit(1);
+        while (start != -1 && start <= maxVendorId) {
+            int end = set ? vendors.nextClearBit(start) : vendors.nextSetBit(start);
+            if (end == -1 || end > maxVendorId) {
+                end = maxVendorId + 1;
+            }
+            builder.addRange(start, end - 1);
+            start = set ? vendors.nextSetBit(end) : vendors.nextClearBit(end);
+        }
+        return builder;
+    }
+
+    /**
+     * Collects the ids of the vendors whose consent equals allowed.  Ids missing from the list,
+     * up to its highest id, count as denied, as in {@link ConsentStringParser#setVendors(List)}:
+     * the vendor list has gaps, and a denied range with default consent must not grant them.
+     *
+     * @param vendors sorted by ascending id
+     * @throws IllegalArgumentException if the vendors are not sorted
+     */
+    static RangeBuilder fromVendors(List<GdprVendor> vendors, boolean allowed) {
+        RangeBuilder builder = new RangeBuilder();
+        // the lowest id not seen yet
+        int next = 1;
+        for (int i = 0; i < vendors.size(); i++) {
+            GdprVendor vendor = vendors.get(i);
+            int id = vendor.getId();
+            if (id < next - 1) {
+                throw new IllegalArgumentException("vendor ids out of order: " + id + " after " + (next - 1));
+            }
+            if (!allowed && id > next) {
+                builder.addRange(next, id - 1);
+            }
+            if (vendor.isAllowed() == allowed) {
+                builder.add(id);
+            }
+            next = Math.max(next, id + 1);
+        }
+        return builder;
+    }
+
+    /**
+     * Adds a vendor id, which must not be lower than the ids added before.
+     */
+    void add(int vendorId) {
+        addRange(vendorId, vendorId);
+    }
+
+    /**
+     * Adds the ids start to end, both inclusive; start must not be lower than the ids added before.
+     */
+    void addRange(int start, int end) {
+        if (count > 0) {
+            int last = ends[count - 1];
+            if (start < starts[count - 1]) {
+                throw new IllegalArgumentException("vendor ids out of order: " + start + " after " + last);
+            }
+            if (start <= last + 1) {
+                ends[count - 1] = Math.max(last, end);
+                return;
+            }
+        }
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int start(int index) {
+        return starts[index];
+    }
+
+    int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @return the highest id added, or 0 if there is none
+     */
+    int highestId() {
+        return count > 0 ? ends[count - 1] : 0;
+    }
+
+    /**
+     * @return the number of bits the entries take in a consent string, without the entry count
+     */
+    int bitLength() {
+        int bits = 0;
+        for (int i = 0; i < count; i++) {
+            bits += starts[i] == ends[i] ? 1 + VENDOR_ID_SIZE : 1 + 2 * VENDOR_ID_SIZE;
+        }
+        return bits;
+    }
+
+    /**
+     * @return a copy of the start ids, as long as the number of entries
+     */
+    int[] starts() {
+        return Arrays.copyOf(starts, count);
+    }
+
+    /**
+     * @return a copy of the end ids, as long as the number of entries
+     */
+    int[] ends() {
+        return Arrays.copyOf(ends, count);
+    }
+}
@@ -0,0 +1,101 @@
+package org.gdprcmplib;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * The default {@link HttpTransport}, on {@link HttpURLConnection}.
+ *
+ * Connections are kept alive and reused: a response is never disconnected, its body is read to
+ * the end when it is closed so that the connection goes back to the pool of HttpURLConnection.
+ */
+public final class UrlConnectionHttpTransport implements HttpTransport {
+
+    static final int DEFAULT_TIMEOUT_MILLIS = 15000;
+
+    // a longer rest of a body is not worth reading to keep the connection
+    private static final int MAX_DRAIN = 64 * 1024;
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    public UrlConnectionHttpTransport() {
+        this(DEFAULT_TIMEOUT_MILLIS, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param connectTimeoutMillis the connect timeout, 0 for none
+     * @param readTimeoutMillis the timeout of every read, 0 for none
+     */
+    public UrlConnectionHttpTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        // responses are cached by HttpCache instead
+        connection.setUseCaches(false);
+        connection.setDoInput(true);
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestMethod("GET");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        final int code = connection.getResponseCode();
+        return new Response() {
+            private InputStream body;
+            private boolean closed;
+
+            @Override
+            public int getCode() {
+                return code;
+            }
+
+            @Override
+            public String getHeader(String name) {
+                return connection.getHeaderField(name);
+            }
+
+            @Override
+            public InputStream getBody() throws IOException {
+                if (body == null) {
+                    // HttpURLConnection only hands out the body of an error as the error stream
+                    body = code >= HttpURLConnection.HTTP_BAD_REQUEST
+                            ? connection.getErrorStream() : connection.getInputStream();
+                    if (body == null) {
+                        body = new ByteArrayInputStream(new byte[0]);
+                    }
+                }
+                return body;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                final InputStream in = getBody();
+                try {
+                    final byte[] buf = new byte[4096];
+                    for (int drained = 0; drained < MAX_DRAIN; ) {
+                        final int n = in.read(buf);
+                        if (n < 0) {
+                            break;
+                        }
+                        drained += n;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,353 @@
+package org.gdprcmplib;
+
+import java.util.Arrays;
+
+/**
+ * Packed set of vendor ids, one bit per id, where bit n of the bitmap stands for vendor id n.
+ * Bit 0 is never set since the lowest vendor ID is 1, nor are bits above maxVendorId, of which a
+ * reused bitmap can have whole words.
+ *
+ * Both vendor encodings of a consent string can be normalized into this form, after which a
+ * consent lookup is a single word load and mask.
+ */
+final class VendorBitmap {
+
+    private final long[] words;
+    private int maxVendorId;
+
+    /**
+     * Creates an empty bitmap able to hold vendor ids 1 to maxVendorId.
+     */
+    VendorBitmap(int maxVendorId) {
+        this.maxVendorId = Math.max(maxVendorId, 0);
+        this.words = new long[(this.maxVendorId >>> 6) + 1];
+    }
+
+    /**
+     * Creates a bitmap holding the given vendor ids; ids below 1 are ignored.
+     */
+    static VendorBitmap of(int... vendorIds) {
+        int max = 0;
+        for (int vendorId : vendorIds) {
+            max = Math.max(max, vendorId);
+        }
+        VendorBitmap bitmap = new VendorBitmap(max);
+        for (int vendorId : vendorIds) {
+            if (vendorId >= 1) {
+                bitmap.words[vendorId >>> 6] |= 1L << vendorId;
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Reads a bitfield vendor encoding, where the bit at offset + n - 1 holds the consent of vendor n.
+     */
+    static VendorBitmap fromBitfield(BitReader bits, int offset, int maxVendorId) {
+        return fromBitfield(bits, offset, maxVendorId, null);
+    }
+
+    /**
+     * Variant of {@link #fromBitfield(BitReader, int, int)} that refills reuse instead of
+     * allocating a bitmap, if it is large enough.
+     */
+    static VendorBitmap fromBitfield(BitReader bits, int offset, int maxVendorId, VendorBitmap reuse) {
+        VendorBitmap bitmap = empty(maxVendorId, reuse);
+        long[] words = bitmap.words;
+        for (int w = 0; w < words.length; w++) {
+            int firstId = Math.max(1, w << 6);
+            int lastId = Math.min(maxVendorId, (w << 6) + 63);
+            if (lastId < firstId) {
+                break;
+            }
+            int count = lastId - firstId + 1;
+            // the string holds the lowest id in the most significant bit, the bitmap in the least
+            long value = bits.readLong(offset + firstId - 1, count);
+            words[w] = (Long.reverse(value) >>> (Long.SIZE - count)) << (firstId & 63);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Writes vendors 1 to maxVendorId as a bitfield vendor encoding, the inverse of
+     * {@link #fromBitfield(BitReader, int, int)}.  Vendors above this bitmap are written as 0.
+     */
+    void writeBitfield(BitWriter out, int maxVendorId) {
+        for (int firstId = 1; firstId <= maxVendorId; ) {
+            int w = firstId >>> 6;
+            int lastId = Math.min(maxVendorId, (w << 6) + 63);
+            int count = lastId - firstId + 1;
+            long word = w < words.length ? words[w] >>> (firstId & 63) : 0L;
+            out.writeLong(Long.reverse(word) >>> (Long.SIZE - count), count);
+            firstId = lastId + 1;
+        }
+    }
+
+    /**
+     * Expands range entries into the set of allowed vendors.  Vendors listed in the entries are
+     * allowed when defaultConsent is false, all others are allowed when it is true.
+     *
+     * @param starts sorted, non overlapping start ids
+     * @param ends end ids matching starts
+     * @param count number of entries
+     */
+    static VendorBitmap fromRanges(int[] starts, int[] ends, int count, int maxVendorId,
+                                   boolean defaultConsent) {
+        return fromRanges(starts, ends, count, maxVendorId, defaultConsent, null);
+    }
+
+    /**
+     * Variant of {@link #fromRanges(int[], int[], int, int, boolean)} that refills reuse instead
+     * of allocating a bitmap, if it is large enough.
+     */
+    static VendorBitmap fromRanges(int[] starts, int[] ends, int count, int maxVendorId,
+                                   boolean defaultConsent, VendorBitmap reuse) {
+        int highestId = count > 0 ? Math.max(maxVendorId, ends[count - 1]) : maxVendorId;
+        VendorBitmap bitmap = empty(highestId, reuse);
+        for (int i = 0; i < count; i++) {
+            bitmap.setRange(Math.max(starts[i], 1), ends[i]);
+        }
+        if (defaultConsent) {
+            bitmap.flipRange(1, highestId);
+        }
+        return bitmap;
+    }
+
+    // reuse cleared to hold ids 1 to maxVendorId when it has enough words, else a new bitmap
+    private static VendorBitmap empty(int maxVendorId, VendorBitmap reuse) {
+        maxVendorId = Math.max(maxVendorId, 0);
+        if (reuse == null || reuse.words.length <= maxVendorId >>> 6) {
+            return new VendorBitmap(maxVendorId);
+        }
+        Arrays.fill(reuse.words, 0, (reuse.maxVendorId >>> 6) + 1, 0L);
+        reuse.maxVendorId = maxVendorId;
+        return reuse;
+    }
+
+    /**
+     * @return the highest vendor id this bitmap can hold
+     */
+    int getMaxVendorId() {
+        return maxVendorId;
+    }
+
+    boolean get(int vendorId) {
+        if (vendorId < 1 || vendorId > maxVendorId) {
+            return false;
+        }
+        return (words[vendorId >>> 6] & (1L << vendorId)) != 0;
+    }
+
+    /**
+     * Looks up every id of vendorIds and stores whether it is set in result[i].
+     *
+     * @param outside the value reported for ids outside of 1 to maxVendorId
+     */
+    void get(int[] vendorIds, boolean[] result, boolean outside) {
+        if (result.length < vendorIds.length) {
+            throw new IllegalArgumentException("result holds " + result.length + " of " + vendorIds.length + " ids");
+        }
+        final long[] words = this.words;
+        final int max = maxVendorId;
+        for (int i = 0; i < vendorIds.length; i++) {
+            int id = vendorIds[i];
+            result[i] = id >= 1 && id <= max ? (words[id >>> 6] & (1L << id)) != 0 : outside;
+        }
+    }
+
+    /**
+     * Looks up every id of vendorIds and sets bit i of result, i.e. bit i % 64 of result[i / 64],
+     * if it is set.  Bits of result past vendorIds.length are cleared.
+     *
+     * @param outside the value reported for ids outside of 1 to maxVendorId
+     */
+    void get(int[] vendorIds, long[] result, boolean outside) {
+        if (result.length < (vendorIds.length + 63) >>> 6) {
+            throw new IllegalArgumentException("result holds " + (result.length << 6) + " of " + vendorIds.length + " ids");
+        }
+        final long[] words = this.words;
+        final int max = maxVendorId;
+        final long outsideBit = outside ? 1L : 0L;
+        for (int w = 0, i = 0; w < result.length; w++) {
+            long packed = 0;
+            for (int end = Math.min(i + 64, vendorIds.length), bit = 0; i < end; i++, bit++) {
+                int id = vendorIds[i];
+                long allowed = id >= 1 && id <= max ? (words[id >>> 6] >>> id) & 1L : outsideBit;
+                packed |= allowed << bit;
+            }
+            result[w] = packed;
+        }
+    }
+
+    /**
+     * Returns the word of the bitmap holding vendor ids 64 * index to 64 * index + 63.
+     *
+     * @param outside whether ids above maxVendorId read as set
+     */
+    long word(int index, boolean outside) {
+        long value = index < words.length ? words[index] : 0L;
+        if (outside) {
+            int lastWord = maxVendorId >>> 6;
+            if (index > lastWord) {
+                value = -1L;
+            } else if (index == lastWord && (maxVendorId & 63) != 63) {
+                value |= -1L << ((maxVendorId & 63) + 1);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return whether both bitmaps hold the same vendors, where ids above maxVendorId read as
+     * outside in this bitmap and as otherOutside in the other
+     */
+    boolean sameVendors(boolean outside, VendorBitmap other, boolean otherOutside) {
+        if (outside != otherOutside) {
+            return false;
+        }
+        int length = Math.max(words.length, other.words.length);
+        for (int w = 0; w < length; w++) {
+            if (word(w, outside) != other.word(w, otherOutside)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the vendors of other that are also set in this bitmap, one word at a time.
+     *
+     * @param outside whether ids above maxVendorId count as set in this bitmap
+     */
+    VendorBitmap and(VendorBitmap other, boolean outside) {
+        VendorBitmap result = new VendorBitmap(other.maxVendorId);
+        for (int w = 0; w < result.words.length; w++) {
+            result.words[w] = other.words[w] & word(w, outside);
+        }
+        return result;
+    }
+
+    /**
+     * @return the lowest vendor id of at least from that is set, or -1 if there is none
+     */
+    int nextSetBit(int from) {
+        if (from > maxVendorId) {
+            return -1;
+        }
+        int w = Math.max(from, 1) >>> 6;
+        long word = words[w] & (-1L << Math.max(from, 1));
+        while (word == 0) {
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @return the lowest vendor id of at least max(from, 1) that is not set; ids above
+     * maxVendorId are never set
+     */
+    int nextClearBit(int from) {
+        from = Math.max(from, 1);
+        if (from > maxVendorId) {
+            return from;
+        }
+        int w = from >>> 6;
+        long word = ~words[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == words.length) {
+                return w << 6;
+            }
+            word = ~words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @return the highest vendor id that is set, or 0 if there is none
+     */
+    int lastSetBit() {
+        for (int w = words.length - 1; w >= 0; w--) {
+            if (words[w] != 0) {
+                return (w << 6) + Long.SIZE - 1 - Long.numberOfLeadingZeros(words[w]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of vendor ids that are set
+     */
+    int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    void set(int vendorId, boolean allowed) {
+        if (vendorId < 1 || vendorId > maxVendorId) {
+            throw new IndexOutOfBoundsException("vendorId: " + vendorId + " maxVendorId: " + maxVendorId);
+        }
+        if (allowed) {
+            words[vendorId >>> 6] |= 1L << vendorId;
+        } else {
+            words[vendorId >>> 6] &= ~(1L << vendorId);
+        }
+    }
+
+    /**
+     * Sets the bits of vendor ids from to to, both inclusive.
+     */
+    void setRange(int from, int to) {
+        if (from > to) {
+            return;
+        }
+        checkRange(from, to);
+        int firstWord = from >>> 6;
+        int lastWord = to >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - (to & 63));
+        if (firstWord == lastWord) {
+            words[firstWord] |= firstMask & lastMask;
+            return;
+        }
+        words[firstWord] |= firstMask;
+        for (int w = firstWord + 1; w < lastWord; w++) {
+            words[w] = -1L;
+        }
+        words[lastWord] |= lastMask;
+    }
+
+    /**
+     * Inverts the bits of vendor ids from to to, both inclusive.
+     */
+    void flipRange(int from, int to) {
+        if (from > to) {
+            return;
+        }
+        checkRange(from, to);
+        int firstWord = from >>> 6;
+        int lastWord = to >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - (to & 63));
+        if (firstWord == lastWord) {
+            words[firstWord] ^= firstMask & lastMask;
+            return;
+        }
+        words[firstWord] ^= firstMask;
+        for (int w = firstWord + 1; w < lastWord; w++) {
+            words[w] = ~words[w];
+        }
+        words[lastWord] ^= lastMask;
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 1 || to > maxVendorId) {
+            throw new IndexOutOfBoundsException("range: " + from + "-" + to + " maxVendorId: " + maxVendorId);
+        }
+    }
+}
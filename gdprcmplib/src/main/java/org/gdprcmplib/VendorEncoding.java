@@ -0,0 +1,87 @@
+package org.gdprcmplib;
+
+import static org.gdprcmplib.ConsentStringParser.DEFAULT_CONSENT_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.ENCODING_TYPE_SIZE;
+import static org.gdprcmplib.ConsentStringParser.MAX_VENDOR_ID_SIZE;
+import static org.gdprcmplib.ConsentStringParser.NUM_ENTRIES_SIZE;
+import static org.gdprcmplib.ConsentStringParser.RANGE_ENTRY_OFFSET;
+import static org.gdprcmplib.ConsentStringParser.VENDOR_ENCODING_RANGE;
+import static org.gdprcmplib.ConsentStringParser.VENDOR_ID_SIZE;
+
+/**
+ * The shortest way to write a set of allowed vendors into a consent string: a bitfield, range
+ * entries listing the allowed vendors, or range entries listing the denied vendors with default
+ * consent.  maxVendorId drops trailing denied vendors unless the default consent is used.
+ */
+final class VendorEncoding {
+
+    final int encodingType;
+    final int maxVendorId;
+    final boolean defaultConsent;
+    // null for bitfield encoding
+    final RangeBuilder ranges;
+
+    private VendorEncoding(int encodingType, int maxVendorId, boolean defaultConsent, RangeBuilder ranges) {
+        this.encodingType = encodingType;
+        this.maxVendorId = maxVendorId;
+        this.defaultConsent = defaultConsent;
+        this.ranges = ranges;
+    }
+
+    /**
+     * @param vendors the allowed vendors
+     * @param maxVendorId the highest vendor id of the vendor list
+     */
+    static VendorEncoding shortest(VendorBitmap vendors, int maxVendorId) {
+        int highestAllowed = Math.min(vendors.lastSetBit(), maxVendorId);
+        RangeBuilder allowed = RangeBuilder.fromBitmap(vendors, highestAllowed, true);
+        RangeBuilder denied = RangeBuilder.fromBitmap(vendors, maxVendorId, false);
+        int bitfieldBits = highestAllowed;
+        int allowedRangeBits = RANGE_ENTRY_OFFSET - DEFAULT_CONSENT_OFFSET + allowed.bitLength();
+        int deniedRangeBits = RANGE_ENTRY_OFFSET - DEFAULT_CONSENT_OFFSET + denied.bitLength();
+
+        if (bitfieldBits <= allowedRangeBits && bitfieldBits <= deniedRangeBits) {
+            return new VendorEncoding(0, highestAllowed, false, null);
+        }
+        if (allowedRangeBits <= deniedRangeBits) {
+            return new VendorEncoding(VENDOR_ENCODING_RANGE, highestAllowed, false, allowed);
+        }
+        return new VendorEncoding(VENDOR_ENCODING_RANGE, maxVendorId, true, denied);
+    }
+
+    /**
+     * @return the number of bits {@link #write(BitWriter, VendorBitmap)} writes
+     */
+    int bitLength() {
+        int length = MAX_VENDOR_ID_SIZE + ENCODING_TYPE_SIZE;
+        if (ranges == null) {
+            return length + maxVendorId;
+        }
+        return length + 1 + NUM_ENTRIES_SIZE + ranges.bitLength();
+    }
+
+    /**
+     * Writes the vendor section, from the max vendor id on.
+     *
+     * @param vendors the allowed vendors this encoding was chosen for
+     */
+    void write(BitWriter bits, VendorBitmap vendors) {
+        bits.writeInt(maxVendorId, MAX_VENDOR_ID_SIZE);
+        bits.writeInt(encodingType, ENCODING_TYPE_SIZE);
+        if (ranges == null) {
+            vendors.writeBitfield(bits, maxVendorId);
+            return;
+        }
+        bits.writeBit(defaultConsent);
+        bits.writeInt(ranges.count(), NUM_ENTRIES_SIZE);
+        for (int i = 0; i < ranges.count(); i++) {
+            int start = ranges.start(i);
+            int end = ranges.end(i);
+            bits.writeBit(start != end);
+            bits.writeInt(start, VENDOR_ID_SIZE);
+            if (start != end) {
+                bits.writeInt(end, VENDOR_ID_SIZE);
+            }
+        }
+    }
+}
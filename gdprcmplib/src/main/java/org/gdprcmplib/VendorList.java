@@ -0,0 +1,182 @@
+package org.gdprcmplib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A vendor list, or a language specific purposes document, read straight from a stream with
+ * {@link JsonPullParser}; only the fields {@link GdprData} uses are kept.  Vendors refer to
+ * purposes and features by id until they are resolved by
+ * {@link GdprData#GdprData(VendorList, VendorList)}, since the purposes may come from another
+ * document.
+ *
+ * Missing fields, or null ones, read as 0 and "", like optInt and optString do.
+ */
+final class VendorList {
+
+    String lastUpdated = "";
+    int vendorListVersion;
+    final List<GdprPurpose> purposes = new ArrayList<>(GdprData.NUM_PURPOSES);
+    final List<GdprFeature> features = new ArrayList<>(GdprData.NUM_FEATURES);
+    final List<Vendor> vendors = new ArrayList<>(500);
+
+    /**
+     * A vendor entry before its purposes and features are resolved.
+     */
+    static final class Vendor {
+        int id;
+        String name = "";
+        String policyUrl = "";
+        int[] purposeIds = EMPTY;
+        int[] legIntPurposeIds = EMPTY;
+        int[] featureIds = EMPTY;
+    }
+
+    private static final int[] EMPTY = new int[0];
+
+    private VendorList() {
+    }
+
+    /**
+     * Reads a UTF-8 document; in is not closed.
+     */
+    static VendorList read(InputStream in) throws IOException {
+        return read(new JsonPullParser(new InputStreamReader(in, "UTF-8")));
+    }
+
+    static VendorList read(JsonPullParser parser) throws IOException {
+        VendorList list = new VendorList();
+        parser.beginObject();
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+            if ("lastUpdated".equals(name)) {
+                list.lastUpdated = readString(parser);
+            } else if ("vendorListVersion".equals(name)) {
+                list.vendorListVersion = readInt(parser);
+            } else if ("purposes".equals(name) && parser.peek() == JsonPullParser.Token.BEGIN_ARRAY) {
+                parser.beginArray();
+                while (parser.hasNext()) {
+                    list.purposes.add(readPurpose(parser));
+                }
+                parser.endArray();
+            } else if ("features".equals(name) && parser.peek() == JsonPullParser.Token.BEGIN_ARRAY) {
+                parser.beginArray();
+                while (parser.hasNext()) {
+                    list.features.add(readFeature(parser));
+                }
+                parser.endArray();
+            } else if ("vendors".equals(name) && parser.peek() == JsonPullParser.Token.BEGIN_ARRAY) {
+                parser.beginArray();
+                while (parser.hasNext()) {
+                    list.vendors.add(readVendor(parser));
+                }
+                parser.endArray();
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return list;
+    }
+
+    private static GdprPurpose readPurpose(JsonPullParser parser) throws IOException {
+        GdprPurpose purpose = new GdprPurpose(0, "", "");
+        parser.beginObject();
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+            if ("id".equals(name)) {
+                purpose.setId(readInt(parser));
+            } else if ("name".equals(name)) {
+                purpose.setName(readString(parser));
+            } else if ("description".equals(name)) {
+                purpose.setDescr(readString(parser));
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return purpose;
+    }
+
+    private static GdprFeature readFeature(JsonPullParser parser) throws IOException {
+        GdprFeature feature = new GdprFeature(0, "", "");
+        parser.beginObject();
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+            if ("id".equals(name)) {
+                feature.setId(readInt(parser));
+            } else if ("name".equals(name)) {
+                feature.setName(readString(parser));
+            } else if ("description".equals(name)) {
+                feature.setDescr(readString(parser));
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return feature;
+    }
+
+    private static Vendor readVendor(JsonPullParser parser) throws IOException {
+        Vendor vendor = new Vendor();
+        parser.beginObject();
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+            if ("id".equals(name)) {
+                vendor.id = readInt(parser);
+            } else if ("name".equals(name)) {
+                vendor.name = readString(parser);
+            } else if ("policyUrl".equals(name)) {
+                vendor.policyUrl = readString(parser);
+            } else if ("purposeIds".equals(name)) {
+                vendor.purposeIds = readIds(parser);
+            } else if ("legIntPurposeIds".equals(name)) {
+                vendor.legIntPurposeIds = readIds(parser);
+            } else if ("featureIds".equals(name)) {
+                vendor.featureIds = readIds(parser);
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return vendor;
+    }
+
+    private static int[] readIds(JsonPullParser parser) throws IOException {
+        if (parser.peek() != JsonPullParser.Token.BEGIN_ARRAY) {
+            parser.skipValue();
+            return EMPTY;
+        }
+        int[] ids = new int[GdprData.NUM_PURPOSES];
+        int count = 0;
+        parser.beginArray();
+        while (parser.hasNext()) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = parser.nextInt();
+        }
+        parser.endArray();
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    private static String readString(JsonPullParser parser) throws IOException {
+        if (parser.peek() == JsonPullParser.Token.NULL) {
+            parser.nextNull();
+            return "";
+        }
+        return parser.nextString();
+    }
+
+    private static int readInt(JsonPullParser parser) throws IOException {
+        if (parser.peek() == JsonPullParser.Token.NULL) {
+            parser.nextNull();
+            return 0;
+        }
+        return parser.nextInt();
+    }
+}
@@ -0,0 +1,131 @@
+package org.gdprcmplib;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads the vendor list together with the language specific purposes.  The two requests run
+ * concurrently, so that opening the CMP takes one round trip rather than two.  The purposes are
+ * optional: if they fail or are not there within {@link Config#LANGUAGE_FETCH_TIMEOUT_MILLIS},
+ * the English purposes of the vendor list are used.
+ */
+final class VendorListLoader {
+
+    private static final String TAG = "VendorListLoader";
+
+    private static ExecutorService sExecutor;
+
+    // streams the documents into the data model, see VendorList
+    private static final HttpMessage.BodyParser<VendorList> PARSER = new HttpMessage.BodyParser<VendorList>() {
+        @Override
+        public VendorList parse(InputStream body) throws IOException {
+            return VendorList.read(body);
+        }
+    };
+
+    /**
+     * The joined responses; purposes is null if they were not requested or not available in time.
+     */
+    static final class Result<T> {
+        final T vendorList;
+        final T purposes;
+
+        private Result(T vendorList, T purposes) {
+            this.vendorList = vendorList;
+            this.purposes = purposes;
+        }
+    }
+
+    private VendorListLoader() {
+    }
+
+    /**
+     * Fetches the vendor list and the purposes in the language of the app, blocking; call it off
+     * the main thread.
+     */
+    static GdprData load(Context context) throws Exception {
+        final HttpCache cache = HttpCache.get(context);
+        String lang = (GDPRUtil.getLanguage(context) + "").toLowerCase();
+        Callable<VendorList> purposes = null;
+        if (!TextUtils.isEmpty(lang) && !lang.equalsIgnoreCase("en")) {
+            final String langUrl = Config.LANGUAGE_SPECIFIC_URL.replace("REPLACEME", lang);
+            MLog.d(TAG, "langUrl: " + lang + " " + langUrl);
+            purposes = new Callable<VendorList>() {
+                @Override
+                public VendorList call() throws Exception {
+                    return new HttpMessage(langUrl).read(cache, PARSER);
+                }
+            };
+        }
+        Callable<VendorList> vendorList = new Callable<VendorList>() {
+            @Override
+            public VendorList call() throws Exception {
+                return new HttpMessage(Config.VENDOR_LIST_URL).read(cache, PARSER);
+            }
+        };
+        Result<VendorList> result = fetch(vendorList, purposes, Config.LANGUAGE_FETCH_TIMEOUT_MILLIS);
+        return new GdprData(result.vendorList, result.purposes);
+    }
+
+    /**
+     * Calls vendorList in the calling thread while purposes, if not null, runs in the background.
+     * The purposes are waited for until timeoutMillis after the start, or not at all if the
+     * vendor list took longer and they are still not done.
+     *
+     * @throws Exception the failure of vendorList; the purposes are then cancelled
+     */
+    static <T> Result<T> fetch(Callable<T> vendorList, Callable<T> purposes, long timeoutMillis)
+            throws Exception {
+        if (purposes == null) {
+            return new Result<>(vendorList.call(), null);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Future<T> pending = executor().submit(purposes);
+        T vendors;
+        try {
+            vendors = vendorList.call();
+        } catch (Exception e) {
+            pending.cancel(true);
+            throw e;
+        }
+        T translated = null;
+        try {
+            translated = pending.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            MLog.e(TAG, "language specific purposes timed out, using English");
+            pending.cancel(true);
+        } catch (ExecutionException e) {
+            MLog.e(TAG, "language specific purposes failed, using English", e.getCause());
+        } catch (InterruptedException e) {
+            pending.cancel(true);
+            throw e;
+        }
+        return new Result<>(vendors, translated);
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (sExecutor == null) {
+            // threads are let go after a minute of idleness
+            sExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+}
@@ -2,13 +2,22 @@ package org.gdprcmplib;
 
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import static org.gdprcmplib.ConsentStringParser.PURPOSES_OFFSET;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ConsentStringParserTest {
 
@@ -235,4 +244,657 @@ public class ConsentStringParserTest {
         assertEquals(myConsentString, consent.getConsentString());
     }
 
-}
\ No newline at end of file
+    @Test(expected = ParseException.class)
+    public void testTruncatedConsentString() throws Exception {
+        byte[] bytes = Base64.decodeWebSafe("BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ");
+        byte[] truncated = new byte[bytes.length - 4];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        new ConsentStringParser(truncated);
+    }
+
+    @Test
+    public void testConsentStringViewMatchesParser() throws Exception {
+        String[] consentStrings = {
+                "BOOWgK2OOWgK2ABABBENAf____AACABgACArIA==",
+                "BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ",
+                "BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA==",
+                "BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA"};
+        for (String consentString : consentStrings) {
+            ConsentStringParser parser = new ConsentStringParser(consentString);
+            ConsentString view = new ConsentString(Base64.decodeWebSafe(consentString));
+            assertEquals(parser.getVersion(), view.getVersion());
+            assertEquals(parser.getConsentRecordCreated(), view.getConsentRecordCreated());
+            assertEquals(parser.getConsentRecordLastUpdated(), view.getConsentRecordLastUpdated());
+            assertEquals(parser.getCmpId(), view.getCmpId());
+            assertEquals(parser.getCmpVersion(), view.getCmpVersion());
+            assertEquals(parser.getConsentScreen(), view.getConsentScreen());
+            assertEquals(parser.getConsentLanguage(), view.getConsentLanguage());
+            assertSame(parser.getConsentLanguage(), view.getConsentLanguage());
+            assertEquals(parser.getVendorListVersion(), view.getVendorListVersion());
+            assertEquals(parser.getMaxVendorId(), view.getMaxVendorId());
+            assertEquals(parser.getVendorEncodingType(), view.getVendorEncodingType());
+            for (int i = 0; i <= 25; i++) {
+                assertEquals(parser.isPurposeAllowed(i), view.isPurposeAllowed(i));
+            }
+            for (int i = 0; i <= 5100; i++) {
+                assertEquals(parser.isVendorAllowed(i), view.isVendorAllowed(i));
+            }
+        }
+        ConsentString range = new ConsentString(Base64.decodeWebSafe(consentStrings[2]));
+        assertFalse(range.isVendorAllowed(0));
+        assertFalse(range.isVendorAllowed(1));
+        assertTrue(range.isVendorAllowed(20));
+        assertTrue(range.isVendorAllowed(225));
+        assertTrue(range.isVendorAllowed(410));
+        assertTrue(range.isVendorAllowed(515));
+        assertFalse(range.isVendorAllowed(3244));
+        assertTrue(range.isVendorAllowed(5024));
+        assertFalse(range.isVendorAllowed(5025));
+    }
+
+    @Test
+    public void testDecodeWebSafeWithAndWithoutPadding() throws Exception {
+        String padded = "BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA==";
+        String unpadded = "BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA";
+        byte[] expected = Base64.decodeWebSafe(padded.getBytes());
+        assertArrayEquals(expected, Base64.decodeWebSafe(padded));
+        assertArrayEquals(expected, Base64.decodeWebSafe(unpadded));
+        assertArrayEquals(expected, Base64.decodeWebSafe(new StringBuilder(unpadded)));
+        char[] chars = (" " + padded + " ").toCharArray();
+        assertArrayEquals(expected, Base64.decodeWebSafe(chars, 1, padded.length()));
+        assertArrayEquals(expected, Base64.decodeWebSafe(ByteBuffer.wrap(unpadded.getBytes())));
+        assertArrayEquals(expected, Base64.decodeWebSafe(padded.substring(0, 20) + "\n" + padded.substring(20)));
+        assertEquals(new ConsentStringParser(padded).getMaxVendorId(), new ConsentStringParser(unpadded).getMaxVendorId());
+    }
+
+    @Test(expected = Base64DecoderException.class)
+    public void testDecodeWebSafeRejectsStandardAlphabet() throws Exception {
+        Base64.decodeWebSafe("BN5lERiOMYEdiAKA+XEND1Ho");
+    }
+
+    @Test(expected = Base64DecoderException.class)
+    public void testDecodeWebSafeRejectsSingleTrailingCharacter() throws Exception {
+        Base64.decodeWebSafe("BN5lE");
+    }
+
+    @Test
+    public void testBase64IntoBuffers() throws Exception {
+        Random random = new Random(7);
+        java.util.Base64.Encoder padding = java.util.Base64.getUrlEncoder();
+        java.util.Base64.Encoder noPadding = padding.withoutPadding();
+        char[] chars = new char[64];
+        byte[] ascii = new byte[64];
+        byte[] decoded = new byte[64];
+        for (int len = 0; len < 40; len++) {
+            byte[] bytes = new byte[len];
+            random.nextBytes(bytes);
+            String expected = padding.encodeToString(bytes);
+            String unpadded = noPadding.encodeToString(bytes);
+
+            assertEquals(expected.length(), Base64.encodeWebSafe(bytes, 0, len, chars, 3, true));
+            assertEquals(expected, new String(chars, 3, expected.length()));
+            assertEquals(unpadded.length(), Base64.encodeWebSafe(bytes, 0, len, ascii, 1, false));
+            assertEquals(unpadded, new String(ascii, 1, unpadded.length(), "US-ASCII"));
+            assertEquals(unpadded.length(), Base64.encodedLength(len, false));
+            ByteBuffer direct = ByteBuffer.allocateDirect(64);
+            assertEquals(expected.length(), Base64.encodeWebSafe(bytes, 0, len, direct, true));
+            assertEquals(expected.length(), direct.position());
+
+            assertEquals(len, Base64.decodeWebSafe(expected, 0, expected.length(), decoded, 2));
+            assertArrayEquals(bytes, Arrays.copyOfRange(decoded, 2, 2 + len));
+            String spaced = " " + unpadded.replaceAll("(.{5})", "$1\n") + " ";
+            assertEquals(len, Base64.decodeWebSafe(spaced.toCharArray(), 0, spaced.length(), decoded, 0));
+            assertArrayEquals(bytes, Arrays.copyOf(decoded, len));
+            direct.flip();
+            assertEquals(len, Base64.decodeWebSafe(direct, decoded, 0));
+            assertArrayEquals(bytes, Arrays.copyOf(decoded, len));
+            ByteBuffer out = ByteBuffer.allocateDirect(64);
+            assertEquals(len, Base64.decodeWebSafe(unpadded, 0, unpadded.length(), out));
+            out.flip();
+            assertEquals(ByteBuffer.wrap(bytes), out);
+        }
+    }
+
+    @Test(expected = Base64DecoderException.class)
+    public void testDecodeWebSafeIntoBufferRejectsStandardAlphabet() throws Exception {
+        String s = "BN5lERiOMYEdiAKA+XEND1Ho";
+        Base64.decodeWebSafe(s, 0, s.length(), new byte[32], 0);
+    }
+
+    @Test
+    public void testResetMatchesNewParser() throws Exception {
+        List<String> strings = new ArrayList<>(Arrays.asList(ConsentFixtures.CONSENT_STRINGS));
+        for (ConsentRecord record : ConsentFixtures.newConsentRecords(20, 11)) {
+            strings.add(ConsentStringEncoder.encode(record));
+        }
+        strings.addAll(Arrays.asList(ConsentFixtures.CONSENT_STRINGS));
+
+        ConsentStringParser reused = new ConsentStringParser(strings.get(strings.size() - 1));
+        for (String consentString : strings) {
+            try {
+                reused.reset("BN5lERiOMYEdiAKAWXEND1Ho");
+                fail();
+            } catch (ParseException expected) {
+            }
+            ConsentStringParser parser = new ConsentStringParser(consentString);
+            reused.reset(consentString);
+            assertEquals(consentString, reused.getConsentString());
+            assertSameConsent(parser, reused);
+            assertEquals(parser.getEncodedConsentString(), reused.getEncodedConsentString());
+
+            byte[] bytes = Base64.decodeWebSafe(consentString);
+            byte[] padded = new byte[bytes.length + 5];
+            System.arraycopy(bytes, 0, padded, 3, bytes.length);
+            reused.reset(padded, 3, bytes.length);
+            assertTrue(reused.getConsentString() == null);
+            reused.normalizeVendors();
+            assertSameConsent(parser, reused);
+            assertEquals(parser.getEncodedConsentString(), reused.getEncodedConsentString());
+            reused.setConsentScreen(parser.getConsentScreen() + 1);
+            parser.setConsentScreen(parser.getConsentScreen() + 1);
+            assertEquals(parser.getEncodedConsentString(), reused.getEncodedConsentString());
+        }
+    }
+
+    private static void assertSameConsent(ConsentStringParser expected, ConsentStringParser actual) {
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getConsentRecordCreated(), actual.getConsentRecordCreated());
+        assertEquals(expected.getCmpId(), actual.getCmpId());
+        assertEquals(expected.getCmpVersion(), actual.getCmpVersion());
+        assertEquals(expected.getConsentScreen(), actual.getConsentScreen());
+        assertEquals(expected.getConsentLanguage(), actual.getConsentLanguage());
+        assertEquals(expected.getVendorListVersion(), actual.getVendorListVersion());
+        assertEquals(expected.getPurposeMask(), actual.getPurposeMask());
+        assertEquals(expected.getMaxVendorId(), actual.getMaxVendorId());
+        assertEquals(expected.getVendorEncodingType(), actual.getVendorEncodingType());
+        assertEquals(expected.getDefaultConsent(), actual.getDefaultConsent());
+        for (int vendorId = 0; vendorId <= expected.getMaxVendorId() + 2; vendorId++) {
+            assertEquals(expected.isVendorAllowed(vendorId), actual.isVendorAllowed(vendorId));
+        }
+        assertEquals(expected.allowedVendorCount(), actual.allowedVendorCount());
+    }
+
+    @Test
+    public void testRangeEntriesLookup() throws Exception {
+        ConsentStringParser parser = new ConsentStringParser(1, 0, 0, 20, 13, 4, "EN", 5);
+        parser.rangeConsent(65535, true, false);
+        assertEquals(1, parser.getRangeEntries().size());
+        assertTrue(parser.isVendorAllowed(1));
+        assertTrue(parser.isVendorAllowed(40000));
+        assertTrue(parser.isVendorAllowed(65535));
+        assertFalse(parser.isVendorAllowed(0));
+
+        parser = new ConsentStringParser(1, 0, 0, 20, 13, 4, "EN", 5);
+        parser.setVendorEncodingType(1);
+        parser.addRangeEntry(new ConsentStringParser.RangeEntry(50, 60));
+        parser.addRangeEntry(new ConsentStringParser.RangeEntry(7));
+        parser.addRangeEntry(new ConsentStringParser.RangeEntry(20, 30));
+        parser.addRangeEntry(new ConsentStringParser.RangeEntry(25, 52));
+        parser.addRangeEntry(new ConsentStringParser.RangeEntry(100, 200));
+        parser.addRangeEntry(new ConsentStringParser.RangeEntry(300));
+        List<ConsentStringParser.RangeEntry> entries = parser.getRangeEntries();
+        assertEquals(4, entries.size());
+        assertEquals(7, entries.get(0).getMinVendorId());
+        assertEquals(20, entries.get(1).getMinVendorId());
+        assertEquals(60, entries.get(1).getMaxVendorId());
+        for (int i = 0; i <= 400; i++) {
+            boolean expected = i == 7 || (i >= 20 && i <= 60) || (i >= 100 && i <= 200) || i == 300;
+            assertEquals("vendor " + i, expected, parser.isVendorAllowed(i));
+        }
+        ConsentStringParser decoded = new ConsentStringParser(parser.getEncodedConsentString());
+        for (int i = 0; i <= 400; i++) {
+            assertEquals("vendor " + i, parser.isVendorAllowed(i), decoded.isVendorAllowed(i));
+        }
+    }
+
+    @Test
+    public void testNormalizedVendors() throws Exception {
+        String[] consentStrings = {
+                "BOOWgK2OOWgK2ABABBENAf____AACABgACArIA==",
+                "BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ",
+                "BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA==",
+                "BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA",
+                ConsentFixtures.newBitfieldConsentString(600)};
+        for (String consentString : consentStrings) {
+            byte[] bytes = Base64.decodeWebSafe(consentString);
+            ConsentStringParser parser = new ConsentStringParser(bytes);
+            ConsentStringParser normalized = new ConsentStringParser(bytes, true);
+            for (int i = -1; i <= 5100; i++) {
+                assertEquals("vendor " + i, parser.isVendorAllowed(i), normalized.isVendorAllowed(i));
+            }
+        }
+
+        ConsentStringParser parser = new ConsentStringParser(1, 0, 0, 20, 13, 4, "EN", 5);
+        parser.rangeConsent(300, false, true);
+        parser.normalizeVendors();
+        assertFalse(parser.isVendorAllowed(1));
+        assertFalse(parser.isVendorAllowed(300));
+        assertTrue(parser.isVendorAllowed(301));
+        parser.addRangeEntry(new ConsentStringParser.RangeEntry(400));
+        assertFalse(parser.isVendorAllowed(400));
+        parser.setDefaultConsent(false);
+        assertTrue(parser.isVendorAllowed(400));
+        assertFalse(parser.isVendorAllowed(401));
+    }
+
+    @Test
+    public void testBatchVendorQueries() throws Exception {
+        String[] consentStrings = {
+                "BOOWgK2OOWgK2ABABBENAf____AACABgACArIA==",
+                "BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ",
+                "BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA==",
+                "BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA",
+                ConsentFixtures.newBitfieldConsentString(600)};
+        int[] vendorIds = new int[700];
+        for (int i = 0; i < vendorIds.length; i++) {
+            vendorIds[i] = (i * 37) % 1400 - 2;
+        }
+        VendorBitmap vendors = VendorBitmap.of(vendorIds);
+        for (String consentString : consentStrings) {
+            ConsentStringParser parser = new ConsentStringParser(consentString);
+            ConsentStringParser batch = new ConsentStringParser(consentString);
+            boolean[] allowed = new boolean[vendorIds.length];
+            long[] packed = new long[(vendorIds.length + 63) / 64];
+            batch.areVendorsAllowed(vendorIds, allowed);
+            batch.areVendorsAllowed(vendorIds, packed);
+            VendorBitmap intersection = batch.intersectAllowedVendors(vendors);
+            for (int i = 0; i < vendorIds.length; i++) {
+                boolean expected = parser.isVendorAllowed(vendorIds[i]);
+                assertEquals("vendor " + vendorIds[i], expected, allowed[i]);
+                assertEquals("vendor " + vendorIds[i], expected, (packed[i >>> 6] & (1L << i)) != 0);
+                if (vendorIds[i] >= 1) {
+                    assertEquals("vendor " + vendorIds[i], expected, intersection.get(vendorIds[i]));
+                }
+            }
+            assertEquals(vendors.getMaxVendorId(), intersection.getMaxVendorId());
+        }
+    }
+
+    @Test
+    public void testAllowedVendorCursor() throws Exception {
+        String[] consentStrings = {
+                "BOOWgK2OOWgK2ABABBENAf____AACABgACArIA==",
+                "BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ",
+                "BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA==",
+                "BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA",
+                ConsentFixtures.newBitfieldConsentString(600)};
+        for (String consentString : consentStrings) {
+            ConsentStringParser parser = new ConsentStringParser(consentString);
+            List<Integer> expected = new ArrayList<>();
+            int highest = parser.getMaxVendorId();
+            if (parser.getRangeEntries() != null) {
+                for (ConsentStringParser.RangeEntry entry : parser.getRangeEntries()) {
+                    highest = Math.max(highest, entry.getMaxVendorId());
+                }
+            }
+            for (int i = 1; i <= highest; i++) {
+                if (parser.isVendorAllowed(i)) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> visited = new ArrayList<>();
+            for (int id = parser.nextAllowedVendor(0); id != -1; id = parser.nextAllowedVendor(id + 1)) {
+                visited.add(id);
+            }
+            assertEquals(expected, visited);
+            assertEquals(expected.size(), parser.allowedVendorCount());
+        }
+
+        ConsentStringParser parser = new ConsentStringParser(1, 0, 0, 20, 13, 4, "EN", 5);
+        parser.rangeConsent(130, true, false);
+        assertEquals(1, parser.nextAllowedVendor(-5));
+        assertEquals(64, parser.nextAllowedVendor(64));
+        assertEquals(-1, parser.nextAllowedVendor(131));
+        assertEquals(130, parser.allowedVendorCount());
+        parser.setDefaultConsent(true);
+        assertEquals(-1, parser.nextAllowedVendor(1));
+        assertEquals(0, parser.allowedVendorCount());
+    }
+
+    @Test
+    public void testPurposeMask() throws Exception {
+        ConsentStringParser consent = new ConsentStringParser("BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA");
+        int mask = consent.getPurposeMask();
+        for (int purposeId = 0; purposeId <= 25; purposeId++) {
+            assertEquals(consent.isPurposeAllowed(purposeId), PurposeSet.contains(mask, purposeId));
+        }
+        assertEquals(consent.getAllowedPurposes().size(), PurposeSet.size(mask));
+        assertEquals(consent.getAllowedPurposes(), PurposeSet.toList(mask));
+        assertTrue(consent.arePurposesAllowed(PurposeSet.of(1, 3, 5)));
+        assertFalse(consent.arePurposesAllowed(PurposeSet.of(1, 6)));
+        assertTrue(consent.arePurposesAllowed(0));
+
+        ConsentStringParser parser = new ConsentStringParser(1, 0, 0, 20, 13, 4, "EN", 5);
+        parser.setPurposes(getNewPurposes(true));
+        assertEquals(PurposeSet.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12), parser.getPurposeMask());
+        parser.rangeConsent(10, true, false);
+        assertEquals(PurposeSet.ALL, parser.getPurposeMask());
+        ConsentStringParser decoded = new ConsentStringParser(parser.getEncodedConsentString());
+        assertEquals(PurposeSet.ALL, decoded.getPurposeMask());
+    }
+
+    @Test
+    public void testConsentSnapshotMatchesParser() throws Exception {
+        String[] consentStrings = {
+                "BOOWgK2OOWgK2ABABBENAf____AACABgACArIA==",
+                "BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ",
+                "BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA==",
+                "BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA",
+                ConsentFixtures.newBitfieldConsentString(600)};
+        for (String consentString : consentStrings) {
+            ConsentStringParser parser = new ConsentStringParser(consentString);
+            ConsentSnapshot snapshot = ConsentSnapshot.of(consentString);
+            assertEquals(consentString, snapshot.getConsentString());
+            assertEquals(parser.getVendorListVersion(), snapshot.getVendorListVersion());
+            assertEquals(parser.getPurposeMask(), snapshot.getPurposeMask());
+            for (int i = 0; i <= 25; i++) {
+                assertEquals(parser.isPurposeAllowed(i), snapshot.isPurposeAllowed(i));
+            }
+            for (int i = -1; i <= 5100; i++) {
+                assertEquals("vendor " + i, parser.isVendorAllowed(i), snapshot.isVendorAllowed(i));
+            }
+        }
+
+        assertSame(ConsentSnapshot.EMPTY, ConsentSnapshot.of(null));
+        ConsentSnapshot malformed = ConsentSnapshot.of("BOOWgK2");
+        assertEquals("BOOWgK2", malformed.getConsentString());
+        assertFalse(malformed.isPurposeAllowed(1));
+        assertFalse(malformed.isVendorAllowed(1));
+    }
+
+    @Test
+    public void testReencodeKeepsBytes() throws Exception {
+        String[] consentStrings = {
+                "BOOWgK2OOWgK2ABABBENAf____AACABgACArIA==",
+                "BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ",
+                "BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA==",
+                "BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA",
+                ConsentFixtures.newBitfieldConsentString(600),
+                ConsentFixtures.newBitfieldConsentString(61)};
+        for (String consentString : consentStrings) {
+            byte[] bytes = Base64.decodeWebSafe(consentString);
+            byte[] reencoded = Base64.decodeWebSafe(new ConsentStringParser(bytes).getEncodedConsentString());
+            // the original may carry trailing bytes of padding
+            assertTrue(consentString, reencoded.length <= bytes.length);
+            for (int i = 0; i < bytes.length; i++) {
+                assertEquals(consentString + " byte " + i, i < reencoded.length ? reencoded[i] : 0, bytes[i]);
+            }
+        }
+    }
+
+    private static List<GdprVendor> newVendors(boolean[] allowed) {
+        List<GdprVendor> vendors = new ArrayList<>();
+        for (int i = 0; i < allowed.length; i++) {
+            GdprVendor vendor = new GdprVendor(i + 1, "vendor " + (i + 1), "");
+            vendor.setAllowed(allowed[i]);
+            vendors.add(vendor);
+        }
+        return vendors;
+    }
+
+    private static ConsentStringParser bitwiseConsent(boolean[] allowed) {
+        ConsentStringParser parser = new ConsentStringParser(1, 0, 0, 20, 13, 4, "EN", 5);
+        parser.setVendorEncodingType(0);
+        parser.setVendors(newVendors(allowed));
+        parser.optimizeVendorEncoding();
+        return parser;
+    }
+
+    @Test
+    public void testBitwiseConsentPicksShortestEncoding() throws Exception {
+        boolean[] allowed = new boolean[600];
+        // all allowed: default consent without entries
+        Arrays.fill(allowed, true);
+        ConsentStringParser parser = bitwiseConsent(allowed);
+        assertEquals(1, parser.getVendorEncodingType());
+        assertTrue(parser.getDefaultConsent());
+        assertEquals(0, parser.getRangeEntries().size());
+        assertEquals(600, parser.getMaxVendorId());
+        // all but a few allowed: default consent and the denied vendors
+        allowed[10] = allowed[300] = allowed[301] = false;
+        parser = bitwiseConsent(allowed);
+        assertEquals(1, parser.getVendorEncodingType());
+        assertTrue(parser.getDefaultConsent());
+        assertEquals(2, parser.getRangeEntries().size());
+        assertEquals(600, parser.getMaxVendorId());
+        // none allowed: empty bitfield
+        Arrays.fill(allowed, false);
+        parser = bitwiseConsent(allowed);
+        assertEquals(0, parser.getVendorEncodingType());
+        assertEquals(0, parser.getMaxVendorId());
+        // every third vendor up to 90: trimmed bitfield
+        for (int i = 2; i < 90; i += 3) {
+            allowed[i] = true;
+        }
+        parser = bitwiseConsent(allowed);
+        assertEquals(0, parser.getVendorEncodingType());
+        assertEquals(90, parser.getMaxVendorId());
+        // a few allowed: range entries of the allowed vendors
+        Arrays.fill(allowed, false);
+        allowed[4] = allowed[200] = allowed[201] = allowed[202] = true;
+        parser = bitwiseConsent(allowed);
+        assertEquals(1, parser.getVendorEncodingType());
+        assertFalse(parser.getDefaultConsent());
+        assertEquals(203, parser.getMaxVendorId());
+        assertEquals(2, parser.getRangeEntries().size());
+    }
+
+    @Test
+    public void testBitwiseConsentRoundTrips() throws Exception {
+        Random random = new Random(42);
+        for (int n = 0; n < 200; n++) {
+            boolean[] allowed = new boolean[1 + random.nextInt(700)];
+            int mode = n % 4;
+            for (int i = 0; i < allowed.length; i++) {
+                allowed[i] = mode == 0 ? random.nextBoolean()
+                        : mode == 1 ? random.nextInt(20) == 0
+                        : mode == 2 ? random.nextInt(20) != 0
+                        : (i / (1 + random.nextInt(50))) % 2 == 0;
+            }
+            ConsentStringParser parser = bitwiseConsent(allowed);
+            String encoded = parser.getEncodedConsentString();
+            ConsentStringParser decoded = new ConsentStringParser(encoded);
+            for (int i = 0; i < allowed.length; i++) {
+                assertEquals("vendor " + (i + 1), allowed[i], parser.isVendorAllowed(i + 1));
+                assertEquals("vendor " + (i + 1), allowed[i], decoded.isVendorAllowed(i + 1));
+            }
+            // never longer than the full bitfield
+            ConsentStringParser bitfield = new ConsentStringParser(1, 0, 0, 20, 13, 4, "EN", 5);
+            bitfield.setVendors(newVendors(allowed));
+            assertTrue(encoded.length() <= bitfield.getEncodedConsentString().length());
+        }
+    }
+
+    @Test
+    public void testRangeBuilder() throws Exception {
+        Random random = new Random(7);
+        for (int n = 0; n < 50; n++) {
+            boolean[] allowed = new boolean[1 + random.nextInt(500)];
+            for (int i = 0; i < allowed.length; i++) {
+                allowed[i] = random.nextInt(4) != 0;
+            }
+            List<GdprVendor> vendors = newVendors(allowed);
+            ConsentStringParser parser = new ConsentStringParser(1, 0, 0, 20, 13, 4, "EN", 5);
+            parser.setVendors(vendors);
+            VendorBitmap bitmap = parser.normalizedVendors();
+            for (boolean consent : new boolean[]{true, false}) {
+                RangeBuilder fromList = RangeBuilder.fromVendors(vendors, consent);
+                RangeBuilder fromBitmap = RangeBuilder.fromBitmap(bitmap, allowed.length, consent);
+                assertArrayEquals(fromList.starts(), fromBitmap.starts());
+                assertArrayEquals(fromList.ends(), fromBitmap.ends());
+                for (int i = 0; i < fromList.count(); i++) {
+                    // entries are maximal runs
+                    assertEquals(consent, allowed[fromList.start(i) - 1]);
+                    assertEquals(consent, allowed[fromList.end(i) - 1]);
+                    if (fromList.start(i) > 1) {
+                        assertEquals(!consent, allowed[fromList.start(i) - 2]);
+                    }
+                    if (fromList.end(i) < allowed.length) {
+                        assertEquals(!consent, allowed[fromList.end(i)]);
+                    }
+                }
+            }
+        }
+
+        RangeBuilder builder = new RangeBuilder();
+        builder.add(3);
+        builder.add(4);
+        builder.add(4);
+        builder.add(9);
+        assertEquals(2, builder.count());
+        assertEquals(4, builder.end(0));
+        assertEquals(9, builder.highestId());
+        assertEquals(1 + 2 * 16 + 1 + 16, builder.bitLength());
+    }
+
+    @Test
+    public void testRangeBuilderGappedVendorList() throws Exception {
+        // 3, 4, 7 and 8 are not in the list, 6 is denied
+        List<GdprVendor> vendors = new ArrayList<>();
+        for (int id : new int[]{1, 2, 5, 6, 9, 10}) {
+            GdprVendor vendor = new GdprVendor(id, "vendor " + id, "");
+            vendor.setAllowed(id != 6);
+            vendors.add(vendor);
+        }
+        RangeBuilder allowed = RangeBuilder.fromVendors(vendors, true);
+        assertArrayEquals(new int[]{1, 5, 9}, allowed.starts());
+        assertArrayEquals(new int[]{2, 5, 10}, allowed.ends());
+        RangeBuilder denied = RangeBuilder.fromVendors(vendors, false);
+        assertArrayEquals(new int[]{3, 6}, denied.starts());
+        assertArrayEquals(new int[]{4, 8}, denied.ends());
+
+        Random random = new Random(13);
+        for (int n = 0; n < 50; n++) {
+            vendors = new ArrayList<>();
+            for (int id = 1 + random.nextInt(3); id < 500; id += 1 + (random.nextInt(5) == 0 ? random.nextInt(20) : 0)) {
+                GdprVendor vendor = new GdprVendor(id, "vendor " + id, "");
+                vendor.setAllowed(random.nextInt(4) != 0);
+                vendors.add(vendor);
+            }
+            ConsentStringParser parser = new ConsentStringParser(1, 0, 0, 20, 13, 4, "EN", 5);
+            parser.setVendors(vendors);
+            for (boolean consent : new boolean[]{true, false}) {
+                RangeBuilder fromList = RangeBuilder.fromVendors(vendors, consent);
+                RangeBuilder fromBitmap = RangeBuilder.fromBitmap(parser.normalizedVendors(),
+                        parser.getMaxVendorId(), consent);
+                assertArrayEquals(fromBitmap.starts(), fromList.starts());
+                assertArrayEquals(fromBitmap.ends(), fromList.ends());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRangeBuilderRejectsUnsortedIds() {
+        RangeBuilder builder = new RangeBuilder();
+        builder.add(5);
+        builder.add(3);
+    }
+
+    @Test
+    public void testHeaderOnlyChangesArePatched() throws Exception {
+        String[] consentStrings = {
+                "BOOWgK2OOWgK2ABABBENAf____AACABgACArIA==",
+                "BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA==",
+                "BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA",
+                ConsentFixtures.newBitfieldConsentString(600)};
+        for (String consentString : consentStrings) {
+            byte[] original = Base64.decodeWebSafe(consentString);
+            ConsentStringParser parser = new ConsentStringParser(consentString);
+            parser.setVersion(parser.getVersion() + 1);
+            parser.setConsentRecordLastUpdated(15240021858L * 100);
+            parser.setCmpVersion(7);
+            parser.setConsentScreen(3);
+            parser.setVendorListVersion(parser.getVendorListVersion() + 1);
+            byte[] encoded = Base64.decodeWebSafe(parser.getEncodedConsentString());
+
+            // everything from the purposes on is kept bit for bit
+            assertEquals(original.length, encoded.length);
+            for (int i = PURPOSES_OFFSET / 8 + 1; i < original.length; i++) {
+                assertEquals(original[i], encoded[i]);
+            }
+            ConsentStringParser decoded = new ConsentStringParser(encoded);
+            assertEquals(parser.getVersion(), decoded.getVersion());
+            assertEquals(15240021858L * 100, decoded.getConsentRecordLastUpdated());
+            assertEquals(parser.getConsentRecordCreated(), decoded.getConsentRecordCreated());
+            assertEquals(7, decoded.getCmpVersion());
+            assertEquals(3, decoded.getConsentScreen());
+            assertEquals(parser.getVendorListVersion(), decoded.getVendorListVersion());
+            assertEquals(parser.getPurposeMask(), decoded.getPurposeMask());
+
+            ConsentStringParser.patchHeader(original, parser.getVersion(), 15240021858L * 100, 7, 3,
+                    parser.getVendorListVersion());
+            assertArrayEquals(encoded, original);
+        }
+    }
+
+    @Test
+    public void testUnchangedConsentIsPatched() throws Exception {
+        boolean[] allowed = new boolean[300];
+        for (int i = 0; i < allowed.length; i += 2) {
+            allowed[i] = true;
+        }
+        // a full length bitfield, longer than the encoding bitwiseConsent would pick
+        ConsentStringParser bitfield = new ConsentStringParser(1, 0, 0, 20, 13, 4, "EN", 5);
+        bitfield.setVendors(newVendors(allowed));
+        String stored = bitfield.getEncodedConsentString();
+
+        ConsentStringParser parser = new ConsentStringParser(stored);
+        parser.setVendorEncodingType(0);
+        parser.setVendors(newVendors(allowed));
+        parser.optimizeVendorEncoding();
+        assertFalse(stored.equals(parser.getEncodedConsentString()));
+
+        parser = new ConsentStringParser(stored);
+        parser.rangeConsent(300, false, true);
+        parser.rangeConsent(300, false, true);
+        String denied = parser.getEncodedConsentString();
+        parser = new ConsentStringParser(denied);
+        parser.setVersion(2);
+        parser.rangeConsent(300, false, true);
+        String patched = parser.getEncodedConsentString();
+        assertEquals(denied.length(), patched.length());
+        assertEquals(denied.substring(PURPOSES_OFFSET / 6 + 1), patched.substring(PURPOSES_OFFSET / 6 + 1));
+        assertEquals(2, new ConsentStringParser(patched).getVersion());
+    }
+
+    @Test
+    public void testConsentStringEncoder() throws Exception {
+        ConsentRecord[] records = ConsentFixtures.newConsentRecords(300, 11);
+        StringBuilder out = new StringBuilder();
+        ConsentStringEncoder.encodeAll(records, out);
+        String[] lines = out.toString().split("\n");
+        assertEquals(records.length, lines.length);
+        for (int n = 0; n < records.length; n++) {
+            ConsentRecord record = records[n];
+            assertEquals(ConsentStringEncoder.encode(record), lines[n]);
+            ConsentStringParser parser = new ConsentStringParser(lines[n]);
+            assertEquals(record.version, parser.getVersion());
+            assertEquals(record.consentRecordLastUpdated, parser.getConsentRecordLastUpdated());
+            assertEquals(record.consentScreen, parser.getConsentScreen());
+            assertEquals(record.vendorListVersion, parser.getVendorListVersion());
+            assertEquals("EN", parser.getConsentLanguage());
+            assertEquals(record.purposeMask, parser.getPurposeMask());
+            for (int id = 1; id <= record.maxVendorId; id++) {
+                assertEquals("vendor " + id, record.vendors.get(id), parser.isVendorAllowed(id));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            records = ConsentFixtures.newConsentRecords(3 * ConsentStringEncoder.CHUNK_SIZE + 5, 12);
+            StringBuilder sequential = new StringBuilder();
+            ConsentStringEncoder.encodeAll(records, sequential);
+            StringBuilder parallel = new StringBuilder();
+            ConsentStringEncoder.encodeAll(records, parallel, executor);
+            assertEquals(sequential.toString(), parallel.toString());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAllowedPurposesAreUnmodifiable() throws Exception {
+        new ConsentStringParser("BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA").getAllowedPurposes().add(2);
+    }
+
+}
@@ -0,0 +1,196 @@
+package org.gdprcmplib;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpCacheTest {
+
+    // the whole body, as UTF-8
+    static final HttpMessage.BodyParser<String> STRING = new HttpMessage.BodyParser<String>() {
+        @Override
+        public String parse(InputStream body) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n = body.read(buf); n != -1; n = body.read(buf)) {
+                bytes.write(buf, 0, n);
+            }
+            return bytes.toString("UTF-8");
+        }
+    };
+
+    private HttpServer server;
+    private File directory;
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private volatile String version = "1";
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("http-cache", "");
+        directory.delete();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                String etag = "\"" + path + "-" + version + "\"";
+                String lastModified = "Mon, 0" + version + " Oct 2018 10:00:00 GMT";
+                if (path.startsWith("/etag")) {
+                    exchange.getResponseHeaders().set("ETag", etag);
+                    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+                } else if (path.startsWith("/modified")) {
+                    exchange.getResponseHeaders().set("Last-Modified", lastModified);
+                    if (lastModified.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+                }
+                fullResponses.incrementAndGet();
+                byte[] body = ("{\"path\":\"" + path + "\",\"version\":" + version + ",\"padding\":\""
+                        + new String(new char[100]).replace('\0', 'x') + "\"}").getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    @Test
+    public void testNotModifiedIsServedFromDisk() throws Exception {
+        HttpCache cache = new HttpCache(directory, 1 << 20);
+        String etag = new HttpMessage(url("/etag")).read(cache, STRING);
+        String modified = new HttpMessage(url("/modified")).read(cache, STRING);
+        assertEquals(2, fullResponses.get());
+
+        // a new instance, as after a restart of the app
+        cache = new HttpCache(directory, 1 << 20);
+        assertEquals(etag, new HttpMessage(url("/etag")).read(cache, STRING));
+        assertEquals(modified, new HttpMessage(url("/modified")).read(cache, STRING));
+        assertEquals(2, fullResponses.get());
+
+        version = "2";
+        String changed = new HttpMessage(url("/etag")).read(cache, STRING);
+        assertTrue(changed.contains("\"version\":2"));
+        assertEquals(3, fullResponses.get());
+        assertEquals(changed, new HttpMessage(url("/etag")).read(cache, STRING));
+        assertEquals(3, fullResponses.get());
+    }
+
+    @Test
+    public void testDeletedBodyIsFetchedAgain() throws Exception {
+        HttpCache cache = new HttpCache(directory, 1 << 20);
+        String body = new HttpMessage(url("/etag")).read(cache, STRING);
+        // as the system may do with the cache directory, keeping the meta data
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(".body")) {
+                assertTrue(file.delete());
+            }
+        }
+        assertEquals(body, new HttpMessage(url("/etag")).read(cache, STRING));
+        assertEquals(2, fullResponses.get());
+        // stored again
+        assertEquals(body.length(), cache.size());
+        assertEquals(body, new HttpMessage(url("/etag")).read(cache, STRING));
+        assertEquals(2, fullResponses.get());
+    }
+
+    @Test
+    public void testStreamedBodyIsStoredOnlyIfParsed() throws Exception {
+        HttpCache cache = new HttpCache(directory, 1 << 20);
+        HttpMessage.BodyParser<String> firstByte = new HttpMessage.BodyParser<String>() {
+            @Override
+            public String parse(InputStream body) throws IOException {
+                // stops short of the end, the rest is stored all the same
+                return String.valueOf((char) body.read());
+            }
+        };
+        HttpMessage.BodyParser<String> failing = new HttpMessage.BodyParser<String>() {
+            @Override
+            public String parse(InputStream body) throws IOException {
+                body.read(new byte[16]);
+                throw new IOException("malformed");
+            }
+        };
+        try {
+            new HttpMessage(url("/etag")).read(cache, failing);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(0, cache.size());
+
+        assertEquals("{", new HttpMessage(url("/etag")).read(cache, firstByte));
+        String body = new HttpMessage(url("/etag")).read(cache, STRING);
+        assertEquals(body.length(), cache.size());
+        assertEquals("{", new HttpMessage(url("/etag")).read(cache, firstByte));
+        assertEquals(2, fullResponses.get());
+    }
+
+    @Test
+    public void testResponsesWithoutValidatorsAreNotStored() throws Exception {
+        HttpCache cache = new HttpCache(directory, 1 << 20);
+        new HttpMessage(url("/plain")).read(cache, STRING);
+        new HttpMessage(url("/plain")).read(cache, STRING);
+        assertEquals(2, fullResponses.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        int bodySize = new HttpMessage(url("/etag0")).read(new HttpCache(directory, 0), STRING).length();
+        // room for three bodies
+        HttpCache cache = new HttpCache(directory, 3 * bodySize + bodySize / 2);
+        new HttpMessage(url("/etag1")).read(cache, STRING);
+        new HttpMessage(url("/etag2")).read(cache, STRING);
+        new HttpMessage(url("/etag3")).read(cache, STRING);
+        new HttpMessage(url("/etag1")).read(cache, STRING);
+        new HttpMessage(url("/etag4")).read(cache, STRING);
+        assertEquals(3 * bodySize, cache.size());
+        int before = fullResponses.get();
+
+        new HttpMessage(url("/etag1")).read(cache, STRING);
+        new HttpMessage(url("/etag3")).read(cache, STRING);
+        new HttpMessage(url("/etag4")).read(cache, STRING);
+        assertEquals(before, fullResponses.get());
+        new HttpMessage(url("/etag2")).read(cache, STRING);
+        assertEquals(before + 1, fullResponses.get());
+    }
+}
@@ -0,0 +1,115 @@
+package org.gdprcmplib;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpMessageTest {
+
+    private HttpServer server;
+    private String text;
+    private byte[] utf8;
+    private byte[] gzip;
+
+    @Before
+    public void setUp() throws Exception {
+        // two and three byte characters at every offset, across many reads
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < 20000; i++) {
+            sb.append(i % 3 == 0 ? "é" : i % 3 == 1 ? "€" : "a");
+        }
+        text = sb.append('}').toString();
+        utf8 = text.getBytes("UTF-8");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(compressed);
+        out.write(utf8);
+        out.close();
+        gzip = compressed.toByteArray();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                boolean compress = exchange.getRequestURI().getPath().equals("/gzip");
+                byte[] body = compress ? gzip : utf8;
+                if (compress) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                } else {
+                    // only Content-Encoding tells a compressed body
+                    exchange.getResponseHeaders().set("X-Note", "gzip");
+                }
+                exchange.getResponseHeaders().set("ETag", "\"1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    @Test
+    public void testMultiByteCharactersAcrossReads() throws Exception {
+        HttpMessage plain = new HttpMessage(url("/plain"));
+        assertEquals(text, plain.getString());
+        assertEquals(utf8.length, plain.getWireBytes());
+        assertEquals(utf8.length, plain.getBodyBytes());
+
+        HttpMessage compressed = new HttpMessage(url("/gzip"));
+        assertEquals(text, compressed.getString());
+        assertEquals(gzip.length, compressed.getWireBytes());
+        assertEquals(utf8.length, compressed.getBodyBytes());
+        assertTrue(compressed.getWireBytes() < compressed.getBodyBytes());
+    }
+
+    @Test
+    public void testContentLengthIsNotTrustedForAllocation() throws Exception {
+        // about 4 GB of chars if the buffer was sized from it
+        InMemoryHttpTransport transport = new InMemoryHttpTransport().respond(url("/plain"), 200,
+                utf8, "Content-Length", String.valueOf(Integer.MAX_VALUE - 16));
+        assertEquals(text, new HttpMessage(url("/plain"), transport).getString());
+    }
+
+    @Test
+    public void testCachedResponseCounters() throws Exception {
+        File directory = File.createTempFile("http-cache", "");
+        directory.delete();
+        try {
+            HttpCache cache = new HttpCache(directory, 1 << 20);
+            HttpMessage message = new HttpMessage(url("/gzip"));
+            assertEquals(text, message.read(cache, HttpCacheTest.STRING));
+            assertEquals(gzip.length, message.getWireBytes());
+            assertEquals(utf8.length, message.getBodyBytes());
+            // decompressed in the cache
+            assertEquals(utf8.length, cache.size());
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+}
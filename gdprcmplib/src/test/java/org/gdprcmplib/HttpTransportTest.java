@@ -0,0 +1,114 @@
+package org.gdprcmplib;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpTransportTest {
+
+    private static final String URL = "https://vendorlist.example/vendorlist.json";
+
+    @Test
+    public void testInMemoryTransport() throws Exception {
+        InMemoryHttpTransport transport = new InMemoryHttpTransport()
+                .respond(URL, 200, "{\"vendors\":[]}".getBytes("UTF-8"), "ETag", "\"v1\"");
+        assertEquals("{\"vendors\":[]}", new HttpMessage(URL, transport).getString());
+        assertEquals("gzip", transport.requestHeaders(0).get("accept-encoding"));
+
+        File directory = File.createTempFile("http-cache", "");
+        directory.delete();
+        try {
+            HttpCache cache = new HttpCache(directory, 1 << 20);
+            assertEquals("{\"vendors\":[]}", new HttpMessage(URL, transport).read(cache, HttpCacheTest.STRING));
+            assertNull(transport.requestHeaders(1).get("If-None-Match"));
+            HttpMessage revalidated = new HttpMessage(URL, transport);
+            assertEquals("{\"vendors\":[]}", revalidated.read(cache, HttpCacheTest.STRING));
+            assertEquals("\"v1\"", transport.requestHeaders(2).get("If-None-Match"));
+            assertEquals(0, revalidated.getWireBytes());
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+
+        try {
+            new HttpMessage("https://vendorlist.example/purposes-xx.json", transport).getString();
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("404"));
+        }
+        assertEquals(4, transport.requests().size());
+        assertEquals(0, transport.openResponses());
+    }
+
+    @Test
+    public void testSetHttpTransport() throws Exception {
+        InMemoryHttpTransport transport = new InMemoryHttpTransport().respond(URL, 200, "42".getBytes("UTF-8"));
+        try {
+            GdprCmp.setHttpTransport(transport);
+            assertSame(transport, GdprCmp.getHttpTransport());
+            assertEquals(42, new HttpMessage(URL).getInt());
+            assertEquals(1, transport.requests().size());
+        } finally {
+            GdprCmp.setHttpTransport(null);
+        }
+        assertTrue(GdprCmp.getHttpTransport() instanceof UrlConnectionHttpTransport);
+    }
+
+    @Test
+    public void testUrlConnectionTransportReusesConnections() throws Exception {
+        final Set<Integer> clientPorts = new HashSet<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                synchronized (clientPorts) {
+                    clientPorts.add(exchange.getRemoteAddress().getPort());
+                }
+                byte[] body = new byte[20000];
+                int code = exchange.getRequestURI().getPath().equals("/missing") ? 404 : 200;
+                exchange.sendResponseHeaders(code, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            HttpTransport transport = new UrlConnectionHttpTransport(5000, 5000);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(20000, new HttpMessage(base + "/list", transport).getBytes().length);
+                try {
+                    new HttpMessage(base + "/missing", transport).getBytes();
+                    fail();
+                } catch (IOException expected) {
+                }
+            }
+            // an error body, and one left unread, are drained so the connection is kept
+            HttpTransport.Response unread = transport.get(base + "/list", new HashMap<String, String>());
+            unread.close();
+            assertEquals(20000, new HttpMessage(base + "/list", transport).getBytes().length);
+        } finally {
+            server.stop(0);
+        }
+        assertEquals(1, clientPorts.size());
+    }
+}
@@ -0,0 +1,125 @@
+package org.gdprcmplib;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link HttpTransport} answering with canned responses, for tests without a
+ * network.  Like a server, it answers a conditional GET whose If-None-Match or
+ * If-Modified-Since matches the canned response with 304 Not Modified, and an unknown url with
+ * 404.  Requests are recorded.  Thread safe.
+ */
+final class InMemoryHttpTransport implements HttpTransport {
+
+    private final Map<String, Canned> responses = new HashMap<>();
+    private final List<String> requests = new ArrayList<>();
+    private final List<Map<String, String>> requestHeaders = new ArrayList<>();
+    private int openResponses;
+
+    private static final class Canned {
+        final int code;
+        final Map<String, String> headers;
+        final byte[] body;
+
+        Canned(int code, Map<String, String> headers, byte[] body) {
+            this.code = code;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Answers the requests for url with the given response.
+     *
+     * @param headers alternate names and values of response headers
+     */
+    synchronized InMemoryHttpTransport respond(String url, int code, byte[] body, String... headers) {
+        Map<String, String> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i + 1 < headers.length; i += 2) {
+            map.put(headers[i], headers[i + 1]);
+        }
+        responses.put(url, new Canned(code, map, body));
+        return this;
+    }
+
+    @Override
+    public synchronized Response get(String url, Map<String, String> headers) {
+        Map<String, String> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        copy.putAll(headers);
+        requests.add(url);
+        requestHeaders.add(Collections.unmodifiableMap(copy));
+        Canned canned = responses.get(url);
+        if (canned == null) {
+            canned = new Canned(HttpURLConnection.HTTP_NOT_FOUND,
+                    Collections.<String, String>emptyMap(), new byte[0]);
+        } else if (notModified(canned, copy)) {
+            canned = new Canned(HttpURLConnection.HTTP_NOT_MODIFIED, canned.headers, new byte[0]);
+        }
+        openResponses++;
+        final Canned response = canned;
+        return new Response() {
+            private boolean closed;
+
+            @Override
+            public int getCode() {
+                return response.code;
+            }
+
+            @Override
+            public String getHeader(String name) {
+                return response.headers.get(name);
+            }
+
+            @Override
+            public InputStream getBody() {
+                return new ByteArrayInputStream(response.body);
+            }
+
+            @Override
+            public void close() {
+                synchronized (InMemoryHttpTransport.this) {
+                    if (!closed) {
+                        closed = true;
+                        openResponses--;
+                    }
+                }
+            }
+        };
+    }
+
+    private static boolean notModified(Canned canned, Map<String, String> request) {
+        String etag = canned.headers.get("ETag");
+        String lastModified = canned.headers.get("Last-Modified");
+        return (etag != null && etag.equals(request.get("If-None-Match")))
+                || (lastModified != null && lastModified.equals(request.get("If-Modified-Since")));
+    }
+
+    /**
+     * @return the urls requested so far, in order
+     */
+    synchronized List<String> requests() {
+        return new ArrayList<>(requests);
+    }
+
+    /**
+     * @return the headers of the request at index of {@link #requests()}, by case insensitive
+     *         name
+     */
+    synchronized Map<String, String> requestHeaders(int index) {
+        return requestHeaders.get(index);
+    }
+
+    /**
+     * @return the number of responses not closed yet
+     */
+    synchronized int openResponses() {
+        return openResponses;
+    }
+}
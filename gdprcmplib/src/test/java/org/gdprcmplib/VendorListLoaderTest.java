@@ -0,0 +1,124 @@
+package org.gdprcmplib;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VendorListLoaderTest {
+
+    private static Callable<String> respond(final String body, final long delayMillis) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                Thread.sleep(delayMillis);
+                return body;
+            }
+        };
+    }
+
+    private static Callable<String> failAfter(final long delayMillis) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                Thread.sleep(delayMillis);
+                throw new IOException("unreachable");
+            }
+        };
+    }
+
+    @Test
+    public void testRequestsRunConcurrently() throws Exception {
+        // the vendor list only comes back once the purposes have started
+        final CountDownLatch purposesStarted = new CountDownLatch(1);
+        Callable<String> vendorList = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return purposesStarted.await(5, TimeUnit.SECONDS) ? "vendors" : "purposes not started";
+            }
+        };
+        Callable<String> purposes = new Callable<String>() {
+            @Override
+            public String call() {
+                purposesStarted.countDown();
+                return "purposes";
+            }
+        };
+        VendorListLoader.Result<String> result = VendorListLoader.fetch(vendorList, purposes, 10000);
+        assertEquals("vendors", result.vendorList);
+        assertEquals("purposes", result.purposes);
+    }
+
+    @Test
+    public void testSlowPurposesFallBackAfterDeadline() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Callable<String> hanging = new Callable<String>() {
+            @Override
+            public String call() {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "purposes";
+            }
+        };
+        VendorListLoader.Result<String> result = VendorListLoader.fetch(respond("vendors", 50), hanging, 300);
+        assertEquals("vendors", result.vendorList);
+        assertNull(result.purposes);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDeadlineDoesNotHoldBackVendorList() throws Exception {
+        // the vendor list is always waited for, and purposes done by then are used
+        final CountDownLatch purposesDone = new CountDownLatch(1);
+        Callable<String> vendorList = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                assertTrue(purposesDone.await(5, TimeUnit.SECONDS));
+                // past the deadline
+                Thread.sleep(300);
+                return "vendors";
+            }
+        };
+        Callable<String> purposes = new Callable<String>() {
+            @Override
+            public String call() {
+                purposesDone.countDown();
+                return "purposes";
+            }
+        };
+        VendorListLoader.Result<String> result = VendorListLoader.fetch(vendorList, purposes, 100);
+        assertEquals("vendors", result.vendorList);
+        assertEquals("purposes", result.purposes);
+    }
+
+    @Test
+    public void testFailingPurposesFallBack() throws Exception {
+        VendorListLoader.Result<String> result = VendorListLoader.fetch(respond("vendors", 0), failAfter(0), 5000);
+        assertEquals("vendors", result.vendorList);
+        assertNull(result.purposes);
+
+        result = VendorListLoader.fetch(respond("vendors", 0), null, 5000);
+        assertEquals("vendors", result.vendorList);
+        assertNull(result.purposes);
+    }
+
+    @Test
+    public void testFailingVendorListIsRethrown() throws Exception {
+        try {
+            VendorListLoader.fetch(failAfter(0), respond("purposes", 100), 5000);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("unreachable", expected.getMessage());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.gdprcmplib;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VendorListTest {
+
+    static final String VENDOR_LIST = "{\"vendorListVersion\":140,\"lastUpdated\":\"2019-05-02T16:00:21Z\","
+            + "\"purposes\":["
+            + "{\"id\":1,\"name\":\"Information storage and access\",\"description\":\"The storage of information\"},"
+            + "{\"id\":2,\"name\":\"Personalisation\",\"description\":\"The collection and processing\"}],"
+            + "\"features\":[{\"id\":1,\"name\":\"Offline data\",\"description\":\"Combining data\"}],"
+            + "\"vendors\":["
+            + "{\"id\":8,\"name\":\"Emerse Sverige AB\",\"purposeIds\":[1,2],\"legIntPurposeIds\":[],"
+            + "\"featureIds\":[1],\"policyUrl\":\"https://www.emerse.com/privacy-policy/\"},"
+            + "{\"id\":2,\"name\":\"Captify\",\"purposeIds\":[],\"legIntPurposeIds\":[2],\"featureIds\":[],"
+            + "\"policyUrl\":\"http://\\u00e9 \\\"x\\\"\",\"deletedDate\":\"2019-01-01T00:00:00Z\","
+            + "\"extra\":{\"nested\":[1,{\"a\":null},true,-1.5e3]}}]}";
+
+    static final String PURPOSES_DE = "{\"vendorListVersion\":141,\"lastUpdated\":\"2019-05-09T16:00:21Z\","
+            + "\"purposes\":["
+            + "{\"id\":2,\"name\":\"Personalisierung\",\"description\":null},"
+            + "{\"id\":1,\"name\":\"Speicherung\",\"description\":\"Das Speichern\"}],"
+            + "\"features\":[{\"id\":1,\"name\":\"Offline-Daten\",\"description\":\"Kombination\"}]}";
+
+    private static VendorList read(String json) throws IOException {
+        return VendorList.read(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+
+    // a reader returning a character at a time, to cross buffer boundaries everywhere
+    private static Reader trickle(String s) {
+        return new StringReader(s) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    @Test
+    public void testPullParser() throws IOException {
+        String json = " {\"a\" : [1, -2.0, \"s\\n\\u0041\", true, false, null, {}, []], \"b\":{\"c\":\"d\"}} ";
+        for (Reader in : new Reader[]{new StringReader(json), trickle(json)}) {
+            JsonPullParser parser = new JsonPullParser(in);
+            parser.beginObject();
+            assertEquals("a", parser.nextName());
+            parser.beginArray();
+            assertEquals(JsonPullParser.Token.NUMBER, parser.peek());
+            assertEquals(1, parser.nextInt());
+            assertEquals(-2, parser.nextInt());
+            assertEquals("s\nA", parser.nextString());
+            assertTrue(parser.nextBoolean());
+            assertFalse(parser.nextBoolean());
+            parser.nextNull();
+            parser.beginObject();
+            assertFalse(parser.hasNext());
+            parser.endObject();
+            parser.skipValue();
+            assertFalse(parser.hasNext());
+            parser.endArray();
+            assertEquals("b", parser.nextName());
+            parser.skipValue();
+            parser.endObject();
+            assertEquals(JsonPullParser.Token.END_DOCUMENT, parser.peek());
+        }
+    }
+
+    @Test
+    public void testPullParserRejectsMalformedInput() {
+        String[] malformed = {"", "{", "{\"a\"}", "{\"a\":1,}", "[1 2]", "[tru]", "{a:1}", "[1] [2]"};
+        for (String json : malformed) {
+            try {
+                JsonPullParser parser = new JsonPullParser(new StringReader(json));
+                parser.skipValue();
+                parser.peek();
+                fail(json);
+            } catch (IOException expected) {
+            }
+        }
+        try {
+            new JsonPullParser(new StringReader("\"\\x\"")).nextString();
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testReadVendorList() throws IOException {
+        VendorList list = read(VENDOR_LIST);
+        assertEquals(140, list.vendorListVersion);
+        assertEquals("2019-05-02T16:00:21Z", list.lastUpdated);
+        assertEquals(2, list.purposes.size());
+        assertEquals("Personalisation", list.purposes.get(1).getName());
+        assertEquals("The storage of information", list.purposes.get(0).getDescr());
+        assertEquals(1, list.features.size());
+        assertEquals(2, list.vendors.size());
+        VendorList.Vendor captify = list.vendors.get(1);
+        assertEquals(2, captify.id);
+        assertEquals("http://\u00e9 \"x\"", captify.policyUrl);
+        assertEquals(0, captify.purposeIds.length);
+        assertEquals(2, captify.legIntPurposeIds[0]);
+    }
+
+    @Test
+    public void testGdprDataFromStreamedDocuments() throws IOException {
+        GdprData data = new GdprData(read(VENDOR_LIST), null);
+        assertEquals(140, data.getVendorListVersion());
+        assertEquals(2, data.getVendors().size());
+        // sorted by id
+        GdprVendor captify = data.getVendors().get(0);
+        GdprVendor emerse = data.getVendors().get(1);
+        assertEquals("Captify", captify.getName());
+        assertEquals(8, emerse.getId());
+        assertEquals("https://www.emerse.com/privacy-policy/", emerse.getPolicyUrl());
+        assertTrue(emerse.hasPurpose(data.getPurposes().get(1)));
+        assertTrue(emerse.hasFeature(new GdprFeature(1, "", "")));
+        assertTrue(captify.hasLegIntPurpose(data.getPurposes().get(1)));
+        assertFalse(captify.hasPurpose(data.getPurposes().get(0)));
+
+        data = new GdprData(read(VENDOR_LIST), read(PURPOSES_DE));
+        assertEquals(141, data.getVendorListVersion());
+        assertEquals("Speicherung", data.getPurposes().get(0).getName());
+        assertEquals("", data.getPurposes().get(1).getDescr());
+        // the vendors refer to the language specific purposes
+        assertEquals("Personalisierung", data.getVendors().get(1).getPurposes().get(1).getName());
+        assertEquals("Offline-Daten", data.getVendors().get(1).getFeatures().get(0).getName());
+    }
+
+    @Test
+    public void testMissingFieldsReadAsDefaults() throws IOException {
+        VendorList list = read("{\"vendors\":[{\"id\":3}],\"purposes\":null}");
+        assertEquals(0, list.vendorListVersion);
+        assertEquals(0, list.purposes.size());
+        assertEquals("", list.vendors.get(0).name);
+        GdprData data = new GdprData(list, null);
+        assertEquals(3, data.getVendors().get(0).getId());
+        assertTrue(data.getVendors().get(0).getPurposes().isEmpty());
+        assertTrue(data.getPurposes().isEmpty());
+    }
+}
@@ -0,0 +1,64 @@
+package org.gdprcmplib;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Consent strings and records shared by the unit tests of the library and of gdprcmptool, and by
+ * the benchmarks.
+ */
+final class ConsentFixtures {
+
+    static final String[] CONSENT_STRINGS = {
+            "BOOWgK2OOWgK2ABABBENAf____AACABgACArIA==",
+            "BN5lERiOMYEdiAOAWeFRAAYAAaAAptQ",
+            "BN5lERiOMYEdiAKAWXEND1HoSBE6CAFAApAMgBkIDIgM0AgOJxAnQA==",
+            "BONZt-1ONZt-1AHABBENAO-AAAAHCAEAASABmADYAOAAeA",
+    };
+
+    private ConsentFixtures() {
+    }
+
+    static String newBitfieldConsentString(int numVendors) throws Exception {
+        return newBitfieldParser(numVendors).getEncodedConsentString();
+    }
+
+    static ConsentStringParser newBitfieldParser(int numVendors) {
+        ConsentStringParser parser = new ConsentStringParser(1, 14924661858L * 100,
+                15240021858L * 100, 20, 13, 4, "EN", 5);
+        parser.setVendorEncodingType(0);
+        List<GdprPurpose> purposes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            GdprPurpose p = new GdprPurpose(i + 1, "purpose " + (i + 1), "");
+            p.setAllowed(i % 2 == 0);
+            purposes.add(p);
+        }
+        List<GdprVendor> vendors = new ArrayList<>();
+        for (int i = 0; i < numVendors; i++) {
+            GdprVendor v = new GdprVendor(i + 1, "vendor " + (i + 1), "");
+            v.setAllowed(i % 3 != 0);
+            vendors.add(v);
+        }
+        parser.setPurposes(purposes);
+        parser.setVendors(vendors);
+        return parser;
+    }
+
+    static ConsentRecord[] newConsentRecords(int count, long seed) {
+        Random random = new Random(seed);
+        ConsentRecord[] records = new ConsentRecord[count];
+        for (int n = 0; n < count; n++) {
+            int maxVendorId = 1 + random.nextInt(700);
+            VendorBitmap vendors = new VendorBitmap(maxVendorId);
+            int mode = n % 3;
+            for (int id = 1; id <= maxVendorId; id++) {
+                vendors.set(id, mode == 0 ? random.nextBoolean() : mode == 1 ? random.nextInt(30) == 0 : random.nextInt(30) != 0);
+            }
+            records[n] = new ConsentRecord(1 + random.nextInt(10), 14924661858L * 100, 15240021858L * 100,
+                    20, 13, random.nextInt(5), "EN", 1 + random.nextInt(200),
+                    random.nextInt() & PurposeSet.ALL, vendors, maxVendorId);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,460 @@
+package org.gdprcmplib;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rough timings of the consent string hot paths.  These are not assertions on speed, they print
+ * the per operation cost so that changes can be compared before and after.  They run on the JVM
+ * with {@code ./gradlew :gdprcmptool:benchmark}, not as part of the unit tests.
+ */
+public class ConsentStringBenchmark {
+
+    private static final int WARMUP = 5000;
+    private static final int ITERATIONS = 20000;
+
+    static void report(String name, long nanos, int ops) {
+        System.out.println(String.format("%-40s %10.1f ns/op", name, (double) nanos / ops));
+    }
+
+    static void reportThroughput(String name, long nanos, int ops) {
+        System.out.println(String.format("%-40s %10.0f strings/s", name, ops * 1e9 / nanos));
+    }
+
+    static void reportAllocation(String name, long bytes, int ops) {
+        System.out.println(String.format("%-40s %10.1f B/op", name, (double) bytes / ops));
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, or -1 if the JVM does not tell
+     */
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    @Test
+    public void benchmarkDecode() throws Exception {
+        List<byte[]> inputs = new ArrayList<>();
+        for (String s : ConsentFixtures.CONSENT_STRINGS) {
+            inputs.add(Base64.decodeWebSafe(s));
+        }
+        inputs.add(Base64.decodeWebSafe(ConsentFixtures.newBitfieldConsentString(600)));
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            for (byte[] bytes : inputs) {
+                sink += new ConsentStringParser(bytes).getCmpId();
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (byte[] bytes : inputs) {
+                sink += new ConsentStringParser(bytes).getCmpId();
+            }
+        }
+        report("decode ConsentStringParser(byte[])", System.nanoTime() - start, ITERATIONS * inputs.size());
+        assertTrue(sink > 0);
+    }
+
+    @Test
+    public void benchmarkDecodeString() throws Exception {
+        List<String> inputs = new ArrayList<>();
+        for (String s : ConsentFixtures.CONSENT_STRINGS) {
+            inputs.add(s);
+        }
+        inputs.add(ConsentFixtures.newBitfieldConsentString(600));
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            for (String s : inputs) {
+                sink += new ConsentStringParser(s).getCmpId();
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String s : inputs) {
+                sink += new ConsentStringParser(s).getCmpId();
+            }
+        }
+        report("decode ConsentStringParser(String)", System.nanoTime() - start, ITERATIONS * inputs.size());
+
+        for (int i = 0; i < WARMUP; i++) {
+            for (String s : inputs) {
+                sink += Base64.decodeWebSafe(s.getBytes()).length;
+                sink += Base64.decodeWebSafe((CharSequence) s).length;
+            }
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String s : inputs) {
+                sink += Base64.decodeWebSafe(s.getBytes()).length;
+            }
+        }
+        report("Base64.decodeWebSafe(getBytes())", System.nanoTime() - start, ITERATIONS * inputs.size());
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String s : inputs) {
+                sink += Base64.decodeWebSafe((CharSequence) s).length;
+            }
+        }
+        report("Base64.decodeWebSafe(CharSequence)", System.nanoTime() - start, ITERATIONS * inputs.size());
+        assertTrue(sink > 0);
+    }
+
+    @Test
+    public void benchmarkReset() throws Exception {
+        List<String> inputs = new ArrayList<>();
+        for (String s : ConsentFixtures.CONSENT_STRINGS) {
+            inputs.add(s);
+        }
+        inputs.add(ConsentFixtures.newBitfieldConsentString(600));
+        int ops = ITERATIONS * inputs.size();
+        ConsentStringParser reused = new ConsentStringParser(inputs.get(0));
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            for (String s : inputs) {
+                sink += new ConsentStringParser(s).allowedVendorCount();
+                reused.reset(s);
+                sink += reused.allowedVendorCount();
+            }
+        }
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String s : inputs) {
+                sink += new ConsentStringParser(s).allowedVendorCount();
+            }
+        }
+        report("new ConsentStringParser(String)", System.nanoTime() - start, ops);
+        if (allocated >= 0) {
+            reportAllocation("new ConsentStringParser(String)", allocatedBytes() - allocated, ops);
+        }
+        allocated = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String s : inputs) {
+                reused.reset(s);
+                sink += reused.allowedVendorCount();
+            }
+        }
+        report("ConsentStringParser.reset(CharSequence)", System.nanoTime() - start, ops);
+        if (allocated >= 0) {
+            reportAllocation("ConsentStringParser.reset(CharSequence)", allocatedBytes() - allocated, ops);
+        }
+        assertTrue(sink > 0);
+    }
+
+    @Test
+    public void benchmarkBase64() throws Exception {
+        List<String> inputs = new ArrayList<>();
+        for (String s : ConsentFixtures.CONSENT_STRINGS) {
+            inputs.add(s);
+        }
+        inputs.add(ConsentFixtures.newBitfieldConsentString(600));
+        int ops = ITERATIONS * inputs.size();
+        java.util.Base64.Decoder jdkDecoder = java.util.Base64.getUrlDecoder();
+        byte[] buffer = new byte[1024];
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            for (String s : inputs) {
+                sink += Base64.decodeWebSafe((CharSequence) s).length;
+                sink += Base64.decodeWebSafe(s, 0, s.length(), buffer, 0);
+                sink += jdkDecoder.decode(s).length;
+            }
+        }
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String s : inputs) {
+                sink += Base64.decodeWebSafe((CharSequence) s).length;
+            }
+        }
+        report("Base64.decodeWebSafe(CharSequence)", System.nanoTime() - start, ops);
+        if (allocated >= 0) {
+            reportAllocation("Base64.decodeWebSafe(CharSequence)", allocatedBytes() - allocated, ops);
+        }
+        allocated = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String s : inputs) {
+                sink += Base64.decodeWebSafe(s, 0, s.length(), buffer, 0);
+            }
+        }
+        report("Base64.decodeWebSafe(CharSequence, byte[])", System.nanoTime() - start, ops);
+        if (allocated >= 0) {
+            reportAllocation("Base64.decodeWebSafe(CharSequence, byte[])", allocatedBytes() - allocated, ops);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String s : inputs) {
+                sink += jdkDecoder.decode(s).length;
+            }
+        }
+        report("java.util.Base64 url decode(String)", System.nanoTime() - start, ops);
+
+        List<byte[]> decoded = new ArrayList<>();
+        for (String s : inputs) {
+            decoded.add(Base64.decodeWebSafe(s));
+        }
+        java.util.Base64.Encoder jdkEncoder = java.util.Base64.getUrlEncoder();
+        char[] chars = new char[1024];
+        for (int i = 0; i < WARMUP; i++) {
+            for (byte[] bytes : decoded) {
+                sink += Base64.encodeWebSafe(bytes, true).length();
+                sink += Base64.encodeWebSafe(bytes, 0, bytes.length, chars, 0, true);
+                sink += jdkEncoder.encodeToString(bytes).length();
+            }
+        }
+        allocated = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (byte[] bytes : decoded) {
+                sink += Base64.encodeWebSafe(bytes, true).length();
+            }
+        }
+        report("Base64.encodeWebSafe(byte[])", System.nanoTime() - start, ops);
+        if (allocated >= 0) {
+            reportAllocation("Base64.encodeWebSafe(byte[])", allocatedBytes() - allocated, ops);
+        }
+        allocated = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (byte[] bytes : decoded) {
+                sink += Base64.encodeWebSafe(bytes, 0, bytes.length, chars, 0, true);
+            }
+        }
+        report("Base64.encodeWebSafe(byte[], char[])", System.nanoTime() - start, ops);
+        if (allocated >= 0) {
+            reportAllocation("Base64.encodeWebSafe(byte[], char[])", allocatedBytes() - allocated, ops);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (byte[] bytes : decoded) {
+                sink += jdkEncoder.encodeToString(bytes).length();
+            }
+        }
+        report("java.util.Base64 url encodeToString", System.nanoTime() - start, ops);
+        assertTrue(sink > 0);
+    }
+
+    @Test
+    public void benchmarkVendorQueries() throws Exception {
+        byte[] bytes = Base64.decodeWebSafe(ConsentFixtures.newBitfieldConsentString(600));
+        ConsentStringParser parser = new ConsentStringParser(bytes);
+        ConsentString view = new ConsentString(bytes);
+
+        int allowed = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            for (int vendorId = 1; vendorId <= 600; vendorId += 7) {
+                if (parser.isVendorAllowed(vendorId)) allowed++;
+                if (view.isVendorAllowed(vendorId)) allowed++;
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int vendorId = 1; vendorId <= 600; vendorId += 7) {
+                if (parser.isVendorAllowed(vendorId)) allowed++;
+            }
+        }
+        report("ConsentStringParser.isVendorAllowed", System.nanoTime() - start, ITERATIONS * 86);
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int vendorId = 1; vendorId <= 600; vendorId += 7) {
+                if (view.isVendorAllowed(vendorId)) allowed++;
+            }
+        }
+        report("ConsentString.isVendorAllowed", System.nanoTime() - start, ITERATIONS * 86);
+
+        bytes = Base64.decodeWebSafe(ConsentFixtures.CONSENT_STRINGS[2]);
+        ConsentStringParser ranges = new ConsentStringParser(bytes);
+        ConsentStringParser normalized = new ConsentStringParser(bytes, true);
+        for (int i = 0; i < WARMUP; i++) {
+            for (int vendorId = 1; vendorId <= 600; vendorId += 7) {
+                if (ranges.isVendorAllowed(vendorId)) allowed++;
+                if (normalized.isVendorAllowed(vendorId)) allowed++;
+            }
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int vendorId = 1; vendorId <= 600; vendorId += 7) {
+                if (ranges.isVendorAllowed(vendorId)) allowed++;
+            }
+        }
+        report("isVendorAllowed, range entries", System.nanoTime() - start, ITERATIONS * 86);
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int vendorId = 1; vendorId <= 600; vendorId += 7) {
+                if (normalized.isVendorAllowed(vendorId)) allowed++;
+            }
+        }
+        report("isVendorAllowed, normalized ranges", System.nanoTime() - start, ITERATIONS * 86);
+        assertTrue(allowed > 0);
+    }
+
+    @Test
+    public void benchmarkBatchVendorQueries() throws Exception {
+        ConsentStringParser parser = new ConsentStringParser(ConsentFixtures.CONSENT_STRINGS[2]);
+        int[] vendorIds = new int[600];
+        for (int i = 0; i < vendorIds.length; i++) {
+            vendorIds[i] = i + 1;
+        }
+        boolean[] result = new boolean[vendorIds.length];
+
+        int allowed = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            for (int vendorId : vendorIds) {
+                if (parser.isVendorAllowed(vendorId)) allowed++;
+            }
+            parser.areVendorsAllowed(vendorIds, result);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int vendorId : vendorIds) {
+                if (parser.isVendorAllowed(vendorId)) allowed++;
+            }
+        }
+        report("600 vendors, isVendorAllowed loop", System.nanoTime() - start, ITERATIONS);
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parser.areVendorsAllowed(vendorIds, result);
+            if (result[i % vendorIds.length]) allowed++;
+        }
+        report("600 vendors, areVendorsAllowed", System.nanoTime() - start, ITERATIONS);
+        assertTrue(allowed > 0);
+    }
+
+    @Test
+    public void benchmarkEncode() throws Exception {
+        List<ConsentStringParser> parsed = new ArrayList<>();
+        for (String s : ConsentFixtures.CONSENT_STRINGS) {
+            parsed.add(new ConsentStringParser(s));
+        }
+        parsed.add(new ConsentStringParser(ConsentFixtures.newBitfieldConsentString(600)));
+        List<ConsentStringParser> built = new ArrayList<>();
+        built.add(ConsentFixtures.newBitfieldParser(600));
+        built.add(ConsentFixtures.newBitfieldParser(60));
+        ConsentStringParser range = new ConsentStringParser(1, 14924661858L * 100, 15240021858L * 100, 20, 13, 4, "EN", 5);
+        range.rangeConsent(600, true, false);
+        built.add(range);
+
+        encode("getEncodedConsentString, built", built);
+        // purposes and vendors as parsed, so only the header is patched
+        encode("getEncodedConsentString, parsed", parsed);
+    }
+
+    private static void encode(String name, List<ConsentStringParser> parsers) throws Exception {
+        long sink = 0;
+        for (int i = 0; i < WARMUP / 10; i++) {
+            for (ConsentStringParser parser : parsers) {
+                sink += parser.getEncodedConsentString().length();
+            }
+        }
+        int iterations = ITERATIONS / 10;
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (ConsentStringParser parser : parsers) {
+                parser.setVersion(i);
+                sink += parser.getEncodedConsentString().length();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        report(name, nanos, iterations * parsers.size());
+        if (allocated >= 0) {
+            reportAllocation(name, allocatedBytes() - allocated, iterations * parsers.size());
+        }
+        assertTrue(sink > 0);
+    }
+
+    @Test
+    public void benchmarkBulkEncode() throws Exception {
+        ConsentRecord[] records = ConsentFixtures.newConsentRecords(20000, 1);
+        StringBuilder out = new StringBuilder(records.length * 64);
+        ConsentStringEncoder.encodeAll(records, out);
+
+        out.setLength(0);
+        long start = System.nanoTime();
+        ConsentStringEncoder.encodeAll(records, out);
+        reportThroughput("encodeAll, 1 thread", System.nanoTime() - start, records.length);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            out.setLength(0);
+            ConsentStringEncoder.encodeAll(records, out, executor);
+            out.setLength(0);
+            start = System.nanoTime();
+            ConsentStringEncoder.encodeAll(records, out, executor);
+            reportThroughput("encodeAll, " + threads + " thread(s)", System.nanoTime() - start, records.length);
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(out.length() > 0);
+    }
+
+    @Test
+    public void benchmarkBulkDecode() throws Exception {
+        ConsentRecord[] records = ConsentFixtures.newConsentRecords(20000, 1);
+        String[] strings = new String[records.length];
+        for (int i = 0; i < records.length; i++) {
+            strings[i] = ConsentStringEncoder.encode(records[i]);
+        }
+        ConsentStringDecoder.decodeAll(strings);
+        long start = System.nanoTime();
+        ConsentStringDecoder.Results results = ConsentStringDecoder.decodeAll(strings);
+        reportThroughput("decodeAll, 1 thread", System.nanoTime() - start, strings.length);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            ConsentStringDecoder.decodeAll(strings, executor);
+            start = System.nanoTime();
+            results = ConsentStringDecoder.decodeAll(strings, executor);
+            reportThroughput("decodeAll, " + threads + " thread(s)", System.nanoTime() - start, strings.length);
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(results.errorCount() == 0);
+    }
+
+    @Test
+    public void benchmarkStreamingDecode() throws Exception {
+        ConsentRecord[] records = ConsentFixtures.newConsentRecords(20000, 2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.length * 64);
+        Base64LineWriter writer = new Base64LineWriter(bytes);
+        for (ConsentRecord record : records) {
+            writer.write(record);
+        }
+        writer.close();
+        byte[] text = bytes.toByteArray();
+
+        long sink = 0;
+        for (int i = 0; i < 3; i++) {
+            Base64LineReader reader = new Base64LineReader(new ByteArrayInputStream(text));
+            long start = System.nanoTime();
+            while (reader.next()) {
+                sink += reader.parser().getCmpId();
+            }
+            if (i == 2) {
+                reportThroughput("Base64LineReader + parser", System.nanoTime() - start, records.length);
+            }
+        }
+        assertTrue(sink > 0);
+    }
+}
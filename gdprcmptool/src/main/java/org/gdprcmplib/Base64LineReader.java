@@ -0,0 +1,222 @@
+package org.gdprcmplib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * Reads newline separated web safe Base64 records, e.g. a file of consent strings, and decodes
+ * them one at a time.  Input goes through a buffer of fixed size and a record is decoded while
+ * it is read, the decoder state being carried over buffer refills, so memory use does not
+ * depend on the size of the input.
+ *
+ * Empty lines are skipped and white space, including the '\r' of "\r\n" separators, is ignored.
+ * Padding with '=' is optional.  A malformed line raises {@link Base64DecoderException} once the
+ * whole line was consumed, so reading can carry on with the next line.
+ *
+ * Part of gdprcmptool, for offline jobs over large files of consent strings on a plain JVM; the
+ * Android library does not ship it.
+ */
+final class Base64LineReader implements Closeable {
+
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * Longest decoded record accepted by default, well above the longest consent string.
+     */
+    static final int DEFAULT_MAX_RECORD_LENGTH = 1 << 16;
+
+    private final ReadableByteChannel in;
+    private final ByteBuffer input;
+    private final int maxRecordLength;
+    private byte[] record = new byte[256];
+    private int length;
+    private long lines;
+    private long lineNumber;
+    private boolean eof;
+
+    Base64LineReader(InputStream in) {
+        this(Channels.newChannel(in), DEFAULT_BUFFER_SIZE, DEFAULT_MAX_RECORD_LENGTH);
+    }
+
+    /**
+     * @param bufferSize the number of bytes read from in at a time
+     * @param maxRecordLength the longest decoded record accepted
+     */
+    Base64LineReader(ReadableByteChannel in, int bufferSize, int maxRecordLength) {
+        if (bufferSize < 4) {
+            throw new IllegalArgumentException("bufferSize: " + bufferSize);
+        }
+        this.in = in;
+        this.input = ByteBuffer.allocate(bufferSize);
+        this.input.flip();
+        this.maxRecordLength = maxRecordLength;
+    }
+
+    /**
+     * Decodes the next record into {@link #record()}.
+     *
+     * @return false at the end of the input
+     * @throws Base64DecoderException if the line is not web safe Base64 or too long; the line is
+     *         skipped
+     */
+    boolean next() throws IOException, Base64DecoderException {
+        byte[] chars = input.array();
+        int pos = input.position();
+        int limit = input.limit();
+        int length = 0;
+        int bits = 0;
+        int numBits = 0;
+        boolean content = false;
+        boolean padded = false;
+        String error = null;
+        while (true) {
+            if (pos == limit) {
+                input.position(pos);
+                boolean filled = fill();
+                pos = input.position();
+                limit = input.limit();
+                if (!filled) {
+                    if (!content) {
+                        this.length = 0;
+                        return false;
+                    }
+                    break;
+                }
+            }
+            if (numBits == 0 && !padded && error == null) {
+                // whole groups of four characters; a separator stops the loop as white space
+                int end = Math.min(limit, pos + (maxRecordLength - length) / 3 * 4);
+                if (end - pos >= 4 && record.length - length < (end - pos) / 4 * 3) {
+                    record = Arrays.copyOf(record, Math.min(maxRecordLength,
+                            Math.max(record.length * 2, length + (end - pos) / 4 * 3)));
+                }
+                int start = pos;
+                for (; pos <= end - 4; pos += 4, length += 3) {
+                    int inBuff = Base64.decodeWebSafeChar(chars[pos]) << 18
+                            | Base64.decodeWebSafeChar(chars[pos + 1]) << 12
+                            | Base64.decodeWebSafeChar(chars[pos + 2]) << 6
+                            | Base64.decodeWebSafeChar(chars[pos + 3]);
+                    if (inBuff < 0) {
+                        break;
+                    }
+                    record[length] = (byte) (inBuff >> 16);
+                    record[length + 1] = (byte) (inBuff >> 8);
+                    record[length + 2] = (byte) inBuff;
+                }
+                if (pos != start && !content) {
+                    content = true;
+                    lineNumber = lines + 1;
+                }
+                if (pos == limit) {
+                    continue;
+                }
+            }
+            byte c = chars[pos++];
+            if (c == '\n') {
+                lines++;
+                if (content) {
+                    break;
+                }
+                continue;
+            }
+            if (error != null) {
+                continue;
+            }
+            byte decoded = Base64.decodeWebSafeChar(c);
+            if (decoded == Base64.WHITE_SPACE_ENC) {
+                continue;
+            }
+            if (!content) {
+                content = true;
+                lineNumber = lines + 1;
+            }
+            if (decoded >= 0 && !padded) {
+                bits = (bits << 6) | decoded;
+                numBits += 6;
+                if (numBits >= 8) {
+                    numBits -= 8;
+                    if (length == maxRecordLength) {
+                        error = "record longer than " + maxRecordLength + " bytes";
+                    } else {
+                        if (length == record.length) {
+                            record = Arrays.copyOf(record, Math.min(maxRecordLength, length * 2));
+                        }
+                        record[length++] = (byte) (bits >> numBits);
+                    }
+                }
+            } else if (decoded == Base64.EQUALS_SIGN_ENC) {
+                padded = true;
+            } else if (padded && decoded >= 0) {
+                error = "padding byte '=' falsely signals end of encoded value";
+            } else {
+                error = "bad Base64 input character " + (c & 0xff) + "(decimal)";
+            }
+        }
+        input.position(pos);
+        this.length = length;
+        if (error == null && numBits == 6) {
+            error = "single trailing character";
+        }
+        if (error != null) {
+            this.length = 0;
+            throw new Base64DecoderException(error + " in line " + lineNumber);
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        input.clear();
+        int n;
+        do {
+            n = in.read(input);
+        } while (n == 0);
+        input.flip();
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the buffer holding the current record in its first {@link #length()} bytes; it is
+     *         reused by the next call to {@link #next()}
+     */
+    byte[] record() {
+        return record;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * @return the line of the current record, starting at 1
+     */
+    long lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return a parser for a copy of the current record; a loop can instead
+     *         {@link ConsentStringParser#reset(byte[], int, int) reset} one parser with
+     *         {@link #record()} and {@link #length()}
+     */
+    ConsentStringParser parser() throws ParseException {
+        return new ConsentStringParser(Arrays.copyOf(record, length));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,104 @@
+package org.gdprcmplib;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes records as newline separated web safe Base64, the counterpart of
+ * {@link Base64LineReader}.  Records are encoded straight into a buffer of fixed size, which is
+ * written out whenever it is full, so records longer than the buffer are fine.  Part of
+ * gdprcmptool, like the reader.
+ */
+final class Base64LineWriter implements Closeable, Flushable {
+
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final WritableByteChannel out;
+    private final ByteBuffer buffer;
+    private final boolean doPadding;
+    // the stream behind out, if any, flushed by flush()
+    private Flushable stream;
+
+    Base64LineWriter(OutputStream out) {
+        this(Channels.newChannel(out), DEFAULT_BUFFER_SIZE, true);
+        this.stream = out;
+    }
+
+    /**
+     * @param bufferSize the number of bytes written to out at a time
+     * @param doPadding is {@code true} to pad records with '=' chars
+     */
+    Base64LineWriter(WritableByteChannel out, int bufferSize, boolean doPadding) {
+        if (bufferSize < 4) {
+            throw new IllegalArgumentException("bufferSize: " + bufferSize);
+        }
+        this.out = out;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.doPadding = doPadding;
+    }
+
+    void write(byte[] record) throws IOException {
+        write(record, 0, record.length);
+    }
+
+    /**
+     * Writes len bytes of record followed by a newline.
+     */
+    void write(byte[] record, int off, int len) throws IOException {
+        while (true) {
+            // bytes whose encoding fits, a multiple of 3 so that only the last piece is padded
+            int room = buffer.remaining() / 4 * 3;
+            if (room >= len) {
+                Base64.encodeWebSafe(record, off, len, buffer, doPadding);
+                break;
+            }
+            if (room > 0) {
+                Base64.encodeWebSafe(record, off, room, buffer, false);
+                off += room;
+                len -= room;
+            }
+            writeBuffer();
+        }
+        if (!buffer.hasRemaining()) {
+            writeBuffer();
+        }
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Writes the consent string for the record followed by a newline.
+     */
+    void write(ConsentRecord record) throws IOException {
+        write(ConsentStringEncoder.toBytes(record));
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeBuffer();
+        if (stream != null) {
+            stream.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBuffer();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.gdprcmplib;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes consent strings in bulk, the counterpart of {@link ConsentStringEncoder}.  Malformed
+ * or null strings do not abort a batch: every string is either valid or gets the exception it
+ * failed with, at its index in the input.  All methods are thread safe.
+ *
+ * Every chunk of strings is decoded into one shared byte array and checked by one parser,
+ * {@link ConsentStringParser#reset(byte[], int, int) reset} for every string, so a batch
+ * allocates next to nothing per string.  Part of gdprcmptool, for batch jobs on a plain JVM; the
+ * Android library does not ship it.
+ */
+final class ConsentStringDecoder {
+
+    /**
+     * Number of strings one task decodes in {@link #decodeAll(String[], ExecutorService)}.
+     */
+    static final int CHUNK_SIZE = 1024;
+
+    /**
+     * The outcome of a batch, indexed like its input.
+     */
+    static final class Results {
+
+        // the decoded bytes of a valid string, shared by its chunk
+        private final byte[][] bytes;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final Exception[] errors;
+        private int errorCount;
+
+        private Results(int size) {
+            bytes = new byte[size][];
+            offsets = new int[size];
+            lengths = new int[size];
+            errors = new Exception[size];
+        }
+
+        int size() {
+            return bytes.length;
+        }
+
+        boolean isValid(int index) {
+            return errors[index] == null;
+        }
+
+        /**
+         * @return a new parser for the string at index, or null if it is malformed; see
+         *         {@link #reset(int, ConsentStringParser)} to go through many without allocating
+         */
+        ConsentStringParser get(int index) throws ParseException {
+            return isValid(index) ? new ConsentStringParser(bytes[index], offsets[index], lengths[index]) : null;
+        }
+
+        /**
+         * Re-points parser at the string at index.
+         *
+         * @return false, leaving parser as it was, if the string is malformed
+         */
+        boolean reset(int index, ConsentStringParser parser) throws ParseException {
+            if (!isValid(index)) {
+                return false;
+            }
+            parser.reset(bytes[index], offsets[index], lengths[index]);
+            return true;
+        }
+
+        /**
+         * @return the {@link ParseException} or {@link Base64DecoderException} the
+         *         string at index failed with, a ParseException if it is null, or null if it is
+         *         valid
+         */
+        Exception error(int index) {
+            return errors[index];
+        }
+
+        int errorCount() {
+            return errorCount;
+        }
+    }
+
+    private ConsentStringDecoder() {
+    }
+
+    static Results decodeAll(List<String> consentStrings) {
+        return decodeAll(consentStrings.toArray(new String[consentStrings.size()]));
+    }
+
+    /**
+     * Decodes the strings in the calling thread.
+     */
+    static Results decodeAll(String[] consentStrings) {
+        Results results = new Results(consentStrings.length);
+        for (int from = 0; from < consentStrings.length; from += CHUNK_SIZE) {
+            results.errorCount += decodeAll(consentStrings, from,
+                    Math.min(consentStrings.length, from + CHUNK_SIZE), results);
+        }
+        return results;
+    }
+
+    static Results decodeAll(List<String> consentStrings, ExecutorService executor) throws InterruptedException {
+        return decodeAll(consentStrings.toArray(new String[consentStrings.size()]), executor);
+    }
+
+    /**
+     * Parallel variant of {@link #decodeAll(String[])}: chunks of {@link #CHUNK_SIZE} strings are
+     * decoded on the executor, each task filling in its own range of the results.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting; the
+     *         remaining tasks are cancelled
+     */
+    static Results decodeAll(final String[] consentStrings, ExecutorService executor) throws InterruptedException {
+        final Results results = new Results(consentStrings.length);
+        List<Future<Integer>> chunks = new ArrayList<>(consentStrings.length / CHUNK_SIZE + 1);
+        try {
+            for (int from = 0; from < consentStrings.length; from += CHUNK_SIZE) {
+                final int start = from;
+                final int end = Math.min(consentStrings.length, from + CHUNK_SIZE);
+                chunks.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return decodeAll(consentStrings, start, end, results);
+                    }
+                }));
+            }
+            for (Future<Integer> chunk : chunks) {
+                results.errorCount += chunk.get();
+            }
+        } catch (ExecutionException e) {
+            // malformed strings are caught per string, so this is a bug or an Error
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        } finally {
+            for (Future<Integer> chunk : chunks) {
+                chunk.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    // decodes one chunk, returns the number of malformed strings
+    private static int decodeAll(String[] consentStrings, int from, int to, Results results) {
+        int errors = 0;
+        // grown as needed, consent strings rarely decode to more than this
+        byte[] decoded = new byte[64 * (to - from)];
+        int length = 0;
+        ConsentStringParser parser = null;
+        for (int i = from; i < to; i++) {
+            String consentString = consentStrings[i];
+            if (consentString == null) {
+                results.errors[i] = new ParseException("null consent string", 0);
+                errors++;
+                continue;
+            }
+            int max = Base64.maxDecodedLength(consentString.length());
+            if (decoded.length - length < max) {
+                decoded = Arrays.copyOf(decoded, Math.max(decoded.length * 2, length + max));
+            }
+            try {
+                int n = Base64.decodeWebSafe(consentString, 0, consentString.length(), decoded, length);
+                if (parser == null) {
+                    parser = new ConsentStringParser(decoded, length, n);
+                } else {
+                    parser.reset(decoded, length, n);
+                }
+                results.offsets[i] = length;
+                results.lengths[i] = n;
+                length += n;
+            } catch (ParseException | Base64DecoderException e) {
+                results.errors[i] = e;
+                errors++;
+            }
+        }
+        // the final array holds every string of the chunk
+        for (int i = from; i < to; i++) {
+            if (results.errors[i] == null) {
+                results.bytes[i] = decoded;
+            }
+        }
+        return errors;
+    }
+}
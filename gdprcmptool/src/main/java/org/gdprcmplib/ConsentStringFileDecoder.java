@@ -0,0 +1,289 @@
+package org.gdprcmplib;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plain JVM tool decoding a file of newline separated consent strings, e.g. a log extract, with
+ * {@link ConsentStringParser}.  The file is memory mapped in chunks split at line boundaries;
+ * chunks are decoded in parallel and every line is decoded in place, without a String per line,
+ * by one {@link ConsentStringParser#reset(byte[], int, int) reset} parser per chunk.
+ *
+ * For every non blank line one row of selected fields is written, in the order of the lines:
+ * <ul>
+ * <li>{@link Format#CSV}: cmpId,vendorListVersion,purposeMask,allowedVendorCount, with empty
+ * fields for a malformed consent string</li>
+ * <li>{@link Format#BINARY}: the same fields as four big endian ints, all -1 for a malformed
+ * consent string</li>
+ * </ul>
+ *
+ * Usage: {@code ConsentStringFileDecoder [-t threads] [-f csv|binary] [-o output] input}; rows go
+ * to standard output unless -o is given, throughput is reported on standard error.  It is built by
+ * the gdprcmptool module, not shipped in the library, and run with
+ * {@code ./gradlew :gdprcmptool:run --args='-t 4 -o /tmp/rows.csv /tmp/consents.txt'}, paths being
+ * relative to the module directory, or from the script of
+ * {@code ./gradlew :gdprcmptool:installDist} in gdprcmptool/build/install/gdprcmptool/bin.
+ */
+final class ConsentStringFileDecoder {
+
+    enum Format {CSV, BINARY}
+
+    /**
+     * Approximate number of bytes one task decodes.
+     */
+    static final int CHUNK_SIZE = 8 << 20;
+
+    /**
+     * Totals of a decoded file.
+     */
+    static final class Stats {
+        long bytes;
+        long lines;
+        long errors;
+    }
+
+    private ConsentStringFileDecoder() {
+    }
+
+    /**
+     * Decodes every line of the file and writes its row to out.
+     *
+     * @param chunkSize the approximate number of bytes one task decodes
+     * @throws InterruptedException if the calling thread is interrupted while waiting; the
+     *         remaining tasks are cancelled
+     */
+    static Stats decode(final FileChannel in, OutputStream out, final Format format,
+                        ExecutorService executor, int threads, int chunkSize)
+            throws IOException, InterruptedException {
+        long size = in.size();
+        Stats stats = new Stats();
+        stats.bytes = size;
+        // bounded look ahead, so that only a few chunks are in memory at a time
+        int maxPending = threads * 2;
+        Deque<Future<Chunk>> pending = new ArrayDeque<>(maxPending);
+        long start = 0;
+        try {
+            while (start < size || !pending.isEmpty()) {
+                while (start < size && pending.size() < maxPending) {
+                    final long from = start;
+                    final long to = nextLineStart(in, Math.min(size, start + chunkSize), size);
+                    pending.add(executor.submit(new Callable<Chunk>() {
+                        @Override
+                        public Chunk call() throws IOException {
+                            return decodeChunk(in.map(FileChannel.MapMode.READ_ONLY, from, to - from), format);
+                        }
+                    }));
+                    start = to;
+                }
+                Chunk chunk = pending.removeFirst().get();
+                chunk.rows.writeTo(out);
+                stats.lines += chunk.lines;
+                stats.errors += chunk.errors;
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<Chunk> chunk : pending) {
+                chunk.cancel(true);
+            }
+        }
+        out.flush();
+        return stats;
+    }
+
+    // the start of the first line at or after pos
+    private static long nextLineStart(FileChannel in, long pos, long size) throws IOException {
+        if (pos >= size) {
+            return size;
+        }
+        ByteBuffer block = ByteBuffer.allocate(512);
+        // the line starts at pos if the byte before is a newline
+        long offset = pos - 1;
+        while (offset < size) {
+            block.clear();
+            int n = in.read(block, offset);
+            if (n < 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (block.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += n;
+        }
+        return size;
+    }
+
+    private static final class Chunk {
+        final ByteArrayOutputStream rows = new ByteArrayOutputStream(8192);
+        int lines;
+        int errors;
+    }
+
+    private static Chunk decodeChunk(MappedByteBuffer lines, Format format) {
+        Chunk chunk = new Chunk();
+        byte[] decoded = new byte[256];
+        byte[] row = new byte[64];
+        // reset for every line
+        ConsentStringParser parser = null;
+        int end = lines.limit();
+        int lineStart = 0;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && lines.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            lines.limit(lineEnd).position(lineStart);
+            if (decoded.length < Base64.maxDecodedLength(lineEnd - lineStart)) {
+                decoded = new byte[Base64.maxDecodedLength(lineEnd - lineStart)];
+            }
+            int length;
+            try {
+                length = Base64.decodeWebSafe(lines, decoded, 0);
+                if (length > 0) {
+                    if (parser == null) {
+                        parser = new ConsentStringParser(decoded, 0, length);
+                    } else {
+                        parser.reset(decoded, 0, length);
+                    }
+                }
+            } catch (Base64DecoderException | ParseException e) {
+                length = -1;
+            }
+            lines.limit(end);
+            lineStart = lineEnd + 1;
+            if (length == 0) {
+                // blank line
+                continue;
+            }
+            chunk.lines++;
+            if (length < 0) {
+                chunk.errors++;
+            }
+            ConsentStringParser valid = length > 0 ? parser : null;
+            int n = format == Format.CSV ? csvRow(valid, row) : binaryRow(valid, row);
+            chunk.rows.write(row, 0, n);
+        }
+        return chunk;
+    }
+
+    private static int csvRow(ConsentStringParser parser, byte[] row) {
+        if (parser == null) {
+            row[0] = ',';
+            row[1] = ',';
+            row[2] = ',';
+            row[3] = '\n';
+            return 4;
+        }
+        int n = writeDecimal(parser.getCmpId(), row, 0);
+        row[n++] = ',';
+        n = writeDecimal(parser.getVendorListVersion(), row, n);
+        row[n++] = ',';
+        n = writeDecimal(parser.getPurposeMask(), row, n);
+        row[n++] = ',';
+        n = writeDecimal(parser.allowedVendorCount(), row, n);
+        row[n++] = '\n';
+        return n;
+    }
+
+    private static int binaryRow(ConsentStringParser parser, byte[] row) {
+        writeInt(parser == null ? -1 : parser.getCmpId(), row, 0);
+        writeInt(parser == null ? -1 : parser.getVendorListVersion(), row, 4);
+        writeInt(parser == null ? -1 : parser.getPurposeMask(), row, 8);
+        writeInt(parser == null ? -1 : parser.allowedVendorCount(), row, 12);
+        return 16;
+    }
+
+    // non negative values only, which all fields are
+    private static int writeDecimal(int value, byte[] dest, int off) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = off + digits - 1; i >= off; i--) {
+            dest[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return off + digits;
+    }
+
+    private static void writeInt(int value, byte[] dest, int off) {
+        dest[off] = (byte) (value >>> 24);
+        dest[off + 1] = (byte) (value >>> 16);
+        dest[off + 2] = (byte) (value >>> 8);
+        dest[off + 3] = (byte) value;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Format format = Format.CSV;
+        String output = null;
+        String input = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("-t".equals(args[i])) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if ("-f".equals(args[i])) {
+                    format = Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                } else if ("-o".equals(args[i])) {
+                    output = args[++i];
+                } else if (input == null && !args[i].startsWith("-")) {
+                    input = args[i];
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+            if (input == null || threads < 1) {
+                throw new IllegalArgumentException();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("usage: ConsentStringFileDecoder [-t threads] [-f csv|binary] [-o output] input");
+            System.exit(2);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        RandomAccessFile file = new RandomAccessFile(input, "r");
+        OutputStream out = output != null ? new FileOutputStream(output) : System.out;
+        try {
+            long start = System.nanoTime();
+            Stats stats = decode(file.getChannel(), new BufferedOutputStream(out, 1 << 16),
+                    format, executor, threads, CHUNK_SIZE);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.println(String.format(Locale.ROOT,
+                    "%d lines, %d malformed, %.1f MB in %.2f s: %.0f lines/s, %.1f MB/s, %d thread(s)",
+                    stats.lines, stats.errors, stats.bytes / 1e6, seconds, stats.lines / seconds,
+                    stats.bytes / 1e6 / seconds, threads));
+        } finally {
+            executor.shutdown();
+            file.close();
+            if (out != System.out) {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.gdprcmplib;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Base64LineReaderTest {
+
+    @Test
+    public void testBase64LineWriterAndReader() throws Exception {
+        ConsentRecord[] records = ConsentFixtures.newConsentRecords(50, 5);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // buffers smaller than a record, so records span buffer boundaries
+        Base64LineWriter writer = new Base64LineWriter(Channels.newChannel(out), 10, true);
+        for (ConsentRecord record : records) {
+            writer.write(record);
+        }
+        writer.close();
+        String text = out.toString("US-ASCII");
+        StringBuilder expected = new StringBuilder();
+        ConsentStringEncoder.encodeAll(records, expected);
+        assertEquals(expected.toString(), text);
+
+        String crlf = "\n" + text.replace("\n", "\r\n\n");
+        Base64LineReader reader = new Base64LineReader(
+                Channels.newChannel(new ByteArrayInputStream(crlf.getBytes("US-ASCII"))), 7, 1 << 16);
+        for (int i = 0; i < records.length; i++) {
+            assertTrue(reader.next());
+            assertEquals(2 + 2 * i, reader.lineNumber());
+            assertArrayEquals(ConsentStringEncoder.toBytes(records[i]),
+                    Arrays.copyOf(reader.record(), reader.length()));
+            assertEquals(records[i].cmpId, reader.parser().getCmpId());
+        }
+        assertFalse(reader.next());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void testBase64LineReaderSkipsMalformedLines() throws Exception {
+        String text = "AAEC\nAA+C\nAAECAw\nAAECA\nAA==AA\nAAECAwQFBg";
+        Base64LineReader reader = new Base64LineReader(
+                Channels.newChannel(new ByteArrayInputStream(text.getBytes("US-ASCII"))), 4, 4);
+        assertTrue(reader.next());
+        assertArrayEquals(new byte[]{0, 1, 2}, Arrays.copyOf(reader.record(), reader.length()));
+        for (int line = 2; line <= 6; line++) {
+            if (line == 3) {
+                assertTrue(reader.next());
+                assertArrayEquals(new byte[]{0, 1, 2, 3}, Arrays.copyOf(reader.record(), reader.length()));
+                continue;
+            }
+            try {
+                reader.next();
+                fail("line " + line);
+            } catch (Base64DecoderException e) {
+                assertEquals(line, reader.lineNumber());
+            }
+        }
+        assertFalse(reader.next());
+    }
+}
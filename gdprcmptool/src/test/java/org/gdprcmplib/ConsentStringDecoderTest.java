@@ -0,0 +1,90 @@
+package org.gdprcmplib;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConsentStringDecoderTest {
+
+    @Test
+    public void testDecodeAll() throws Exception {
+        ConsentRecord[] records = ConsentFixtures.newConsentRecords(3000, 4);
+        String[] strings = new String[records.length];
+        for (int i = 0; i < records.length; i++) {
+            strings[i] = ConsentStringEncoder.encode(records[i]);
+        }
+        strings[5] = "BN5lE";
+        strings[2500] = "BN5lERiOMYEdiAKA+XEND1Ho";
+        strings[2999] = "BN5lERiOMYEdiAKAWXEND1Ho";
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ConsentStringDecoder.Results sequential = ConsentStringDecoder.decodeAll(strings);
+            ConsentStringDecoder.Results parallel = ConsentStringDecoder.decodeAll(Arrays.asList(strings), executor);
+            for (ConsentStringDecoder.Results results : Arrays.asList(sequential, parallel)) {
+                assertEquals(strings.length, results.size());
+                assertEquals(3, results.errorCount());
+                assertTrue(results.error(5) instanceof Base64DecoderException);
+                assertTrue(results.error(2500) instanceof Base64DecoderException);
+                assertTrue(results.error(2999) instanceof ParseException);
+                ConsentStringParser reused = new ConsentStringParser(strings[0]);
+                for (int i = 0; i < strings.length; i++) {
+                    if (i == 5 || i == 2500 || i == 2999) {
+                        assertFalse(results.isValid(i));
+                        assertNull(results.get(i));
+                        assertFalse(results.reset(i, reused));
+                        continue;
+                    }
+                    assertNull(results.error(i));
+                    ConsentStringParser parser = results.get(i);
+                    ConsentStringParser expected = new ConsentStringParser(ConsentStringEncoder.toBytes(records[i]));
+                    assertEquals(records[i].purposeMask, parser.getPurposeMask());
+                    assertEquals(expected.getConsentRecordLastUpdated(), parser.getConsentRecordLastUpdated());
+                    assertEquals(expected.allowedVendorCount(), parser.allowedVendorCount());
+                    assertTrue(results.reset(i, reused));
+                    assertEquals(records[i].cmpId, reused.getCmpId());
+                    assertEquals(parser.allowedVendorCount(), reused.allowedVendorCount());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testNullString() throws Exception {
+        ConsentRecord[] records = ConsentFixtures.newConsentRecords(2 * ConsentStringDecoder.CHUNK_SIZE, 6);
+        String[] strings = new String[records.length];
+        for (int i = 0; i < records.length; i++) {
+            strings[i] = ConsentStringEncoder.encode(records[i]);
+        }
+        int nullIndex = ConsentStringDecoder.CHUNK_SIZE + 7;
+        strings[nullIndex] = null;
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ConsentStringDecoder.Results sequential = ConsentStringDecoder.decodeAll(strings);
+            ConsentStringDecoder.Results parallel = ConsentStringDecoder.decodeAll(strings, executor);
+            for (ConsentStringDecoder.Results results : Arrays.asList(sequential, parallel)) {
+                assertEquals(1, results.errorCount());
+                assertFalse(results.isValid(nullIndex));
+                assertTrue(results.error(nullIndex) instanceof ParseException);
+                for (int i = 0; i < strings.length; i++) {
+                    if (i != nullIndex) {
+                        assertEquals(records[i].cmpId, results.get(i).getCmpId());
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
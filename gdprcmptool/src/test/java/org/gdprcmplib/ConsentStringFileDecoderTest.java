@@ -0,0 +1,66 @@
+package org.gdprcmplib;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ConsentStringFileDecoderTest {
+
+    @Test
+    public void testDecode() throws Exception {
+        // enough lines for many chunks
+        String[] lines = new String[200];
+        StringBuilder text = new StringBuilder("\nnot base64!\r\n");
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = ConsentFixtures.CONSENT_STRINGS[i % ConsentFixtures.CONSENT_STRINGS.length];
+            text.append(lines[i]).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        File file = File.createTempFile("consent", ".txt");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(text.toString().getBytes("US-ASCII"));
+            out.close();
+            StringBuilder expectedCsv = new StringBuilder(",,,\n");
+            ByteBuffer expectedBinary = ByteBuffer.allocate(16 * (lines.length + 1));
+            expectedBinary.putInt(-1).putInt(-1).putInt(-1).putInt(-1);
+            for (String line : lines) {
+                ConsentStringParser parser = new ConsentStringParser(line);
+                expectedCsv.append(parser.getCmpId()).append(',').append(parser.getVendorListVersion())
+                        .append(',').append(parser.getPurposeMask()).append(',')
+                        .append(parser.allowedVendorCount()).append('\n');
+                expectedBinary.putInt(parser.getCmpId()).putInt(parser.getVendorListVersion())
+                        .putInt(parser.getPurposeMask()).putInt(parser.allowedVendorCount());
+            }
+
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                // chunks of a few lines each
+                ByteArrayOutputStream csv = new ByteArrayOutputStream();
+                ConsentStringFileDecoder.Stats stats = ConsentStringFileDecoder.decode(in.getChannel(), csv,
+                        ConsentStringFileDecoder.Format.CSV, executor, 2, 300);
+                assertEquals(expectedCsv.toString(), csv.toString("US-ASCII"));
+                assertEquals(lines.length + 1, stats.lines);
+                assertEquals(1, stats.errors);
+                ByteArrayOutputStream binary = new ByteArrayOutputStream();
+                ConsentStringFileDecoder.decode(in.getChannel(), binary,
+                        ConsentStringFileDecoder.Format.BINARY, executor, 2, 1000);
+                assertArrayEquals(expectedBinary.array(), binary.toByteArray());
+            } finally {
+                in.close();
+            }
+        } finally {
+            executor.shutdown();
+            file.delete();
+        }
+    }
+}